@@ -0,0 +1,8 @@
+package ExceptionClasses.InvalidInputExceptions;
+
+public class InvalidDeadlineException extends Exception{
+
+    public InvalidDeadlineException(String message){
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package ExceptionClasses.JobExceptions;
+
+public class JobNotFoundException extends Exception{
+    public JobNotFoundException(String message){
+        super(message);
+    }
+}
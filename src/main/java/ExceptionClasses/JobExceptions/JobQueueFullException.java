@@ -0,0 +1,7 @@
+package ExceptionClasses.JobExceptions;
+
+public class JobQueueFullException extends Exception{
+    public JobQueueFullException(String message){
+        super(message);
+    }
+}
@@ -7,17 +7,23 @@ import ExceptionClasses.PersonalizationExceptions.GetUsersTopTracksRequestExcept
 import ExceptionClasses.PlaylistExceptions.AddItemsToPlaylistException;
 import ExceptionClasses.PlaylistExceptions.CreatePlaylistException;
 import ExceptionClasses.ProfileExceptions.GetCurrentUsersProfileException;
-import ExceptionClasses.TrackExceptions.GetAudioFeaturesForTrackException;
+import ExceptionClasses.TrackExceptions.GetAudioFeaturesForSeveralTracksException;
+import PlaylistGenerating.PlaylistTypes.DurationSolver;
+import PlaylistGenerating.PlaylistTypes.DurationWindow;
 import PlaylistGenerating.PlaylistTypes.GeneratePlaylist;
+import PlaylistGenerating.PlaylistTypes.GenerationContext;
+import PlaylistGenerating.PlaylistTypes.TrackPool;
+import PlaylistGenerating.PlaylistTypes.WideningSearch;
 import SpotifyUtilities.PlaylistUtilities;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.model_objects.specification.*;
 
 import java.util.*;
+import java.util.concurrent.Future;
 
-import static PlaylistGenerating.PlaylistTypes.Classic.ClassicCheckingUtilities.*;
-import static PlaylistGenerating.PlaylistTypes.Classic.ClassicTrackUtilities.*;
 import static PlaylistGenerating.PlaylistTypes.CommonUtilities.*;
+import static PlaylistGenerating.PlaylistTypes.ConcurrencyUtilities.awaitAll;
+import static PlaylistGenerating.PlaylistTypes.ConcurrencyUtilities.submit;
 import static SpotifyUtilities.PlaylistUtilities.createPlaylist;
 import static SpotifyUtilities.TrackUtilities.duration_comparator;
 
@@ -25,19 +31,22 @@ public class GenerateClassic extends GeneratePlaylist {
 
     //protected static final int limit = 21; // Number of tracks we want to get
     protected static final int limit = 21; // Number of tracks we want to get
-    protected static int num_intervals;
-    protected static int transition_length_ms = 0; // transition length is the warm-up/ wind down sequence individually
-    protected static int min_transition_length_ms;
-    protected static int max_transition_length_ms;
-    protected static int target_length_ms = 0;
-    protected static int min_target_length_ms;
-    protected static int max_target_length_ms;
+    // The transition window is the warm-up/ wind down sequence individually, one song per interval
+    private final GenerationContext context;
     private final float bpm_difference;
     private final float energy_difference;
-    private HashMap<Integer, TrackSimplified[]> intervals;
     private final float transition_moe = .02f;
     private static final int bpm_offset = 100; // How far from the query bpm we want song tempos in the recommendations request below
 
+    /**
+     * Candidates fetched for the target sequence and the subset of them that fits the target window
+     *
+     * @param pool     the fetched candidates
+     * @param best_fit indices into pool of the candidates picked by findBestTargetTracks, null if no subset fits
+     */
+    private record TargetCandidates(TrackPool pool, int[] best_fit) {
+    }
+
 
     /**
      * Constructor for generating a classic style playlist
@@ -54,8 +63,6 @@ public class GenerateClassic extends GeneratePlaylist {
 
         super(spotify_api, genres, age, workout_length, intensity, is_personalized);
 
-        intervals = new HashMap<>();
-
         // warmup and wind-down are the same length and are 10% of the workout each
         float transition_length_min;
 
@@ -67,31 +74,38 @@ public class GenerateClassic extends GeneratePlaylist {
 
         // Number of intervals in which there is one song per interval (For warmup/wind-down only)
         // We will round up to avoid intervals needing to have exceptionally long songs
-        num_intervals = Math.round(transition_length_min / avg_song_len);
-        bpm_difference = findBpmDifference();
-        energy_difference = findEnergyDifference();
+        int num_intervals = Math.round(transition_length_min / avg_song_len);
+        bpm_difference = findBpmDifference(num_intervals);
+        energy_difference = findEnergyDifference(num_intervals);
 
-        transition_length_ms = (int) (transition_length_min * 60_000); // conversion
-        setTransitionLengths(transition_moe);
+        // Special case for workouts less than 45 minutes, we want one interval (see findBpmDifference)
+        if (num_intervals < 2) num_intervals = 1;
 
-        target_length_ms = workout_len_ms - (transition_length_ms * 2);
-        setTargetLengths(margin_of_error);
+        int transition_length_ms = (int) (transition_length_min * 60_000); // conversion
+        int target_length_ms = workout_len_ms - (transition_length_ms * 2);
+
+        context = new GenerationContext(num_intervals, 1,
+                DurationWindow.of(target_length_ms, margin_of_error), null,
+                DurationWindow.of(transition_length_ms, transition_moe), WideningSearch.newGenerationBudget());
     }
 
     @Override
     public String generatePlaylist() throws GetCurrentUsersProfileException, GetRecommendationsException,
-            CreatePlaylistException, AddItemsToPlaylistException, GetAudioFeaturesForTrackException {
+            CreatePlaylistException, AddItemsToPlaylistException, GetAudioFeaturesForSeveralTracksException {
+
+        // The three phases only read this generator's final fields, so they are built at the same time
+        List<Future<TrackSimplified[]>> phases = List.of(
+                submit(() -> findTransitionTracks(true)), // warmup
+                submit(this::getTargetTracks), // target
+                submit(() -> findTransitionTracks(false))); // wind-down
 
-        System.out.println("warmup");
-        TrackSimplified[] warmup_tracks = findTransitionTracks(true);
-        System.out.println("target");
-        TrackSimplified[] target_tracks = getTargetTracks();
-        System.out.println("wind-down");
-        TrackSimplified[] wind_down_tracks = findTransitionTracks(false);
+        List<TrackSimplified[]> phase_tracks = awaitAll(phases, GetRecommendationsException.class);
 
-        TrackSimplified[] playlist_tracks = concatTracks(warmup_tracks, target_tracks, wind_down_tracks);
+        TrackSimplified[] playlist_tracks = concatTracks(phase_tracks.get(0), phase_tracks.get(1), phase_tracks.get(2));
 
+        // Phases were built independently, so this is also where tracks picked by more than one phase are replaced
         eliminateDupesAndNonPlayable(spotify_api, playlist_tracks, genres, seed_artists, seed_tracks, user.getCountry());
+        scorePlaylist(playlist_tracks);
 
         // Create a playlist on the user's account
         Playlist playlist = createPlaylist(spotify_api, user.getId(), user.getDisplayName());
@@ -101,11 +115,7 @@ public class GenerateClassic extends GeneratePlaylist {
         System.out.println("Creating Playlist");
         PlaylistUtilities.addItemsToPlaylist(spotify_api, playlist_id, playlist_track_uris);
 
-        try {
-            printPlaylistTempos(spotify_api, playlist_tracks);
-        }catch (Exception ex){
-            System.out.println(ex.getMessage());
-        }
+        printPlaylistTempos(playlist_tracks);
 
         return playlist_id;
     }
@@ -121,172 +131,89 @@ public class GenerateClassic extends GeneratePlaylist {
      */
     private TrackSimplified[] findTransitionTracks(boolean is_warmup) throws GetRecommendationsException {
 
-        TrackSimplified[] tracks = null;
-        int closest_column;
+        TrackSimplified[] tracks;
         float local_moe = transition_moe; // Keeps track of moe for duration purposes which we will be altering here
+        GenerationContext local_context = context;
 
-        do {
-            intervals = getSortedIntervals(is_warmup); // populated class variable intervals with sorted intervals
-            closest_column = findClosestColumn();
+        HashMap<Integer, TrackSimplified[]> intervals = getSortedIntervals(is_warmup);
+        TrackPool[] pools = new TrackPool[intervals.size()];
 
-            // If a good closest column was found try and find the best fit.
+        for (int interval = 0; interval < pools.length; interval++) {
+            pools[interval] = TrackPool.of(intervals.get(interval));
+        }
 
-            if (closest_column != -1) {
-                tracks = getBestFit(closest_column);
+        // Every combination of the fetched tracks is considered, so if none fits fetching again would not help (the
+        // same query returns the same tracks), only relaxing the moe can. An empty interval never fits though, so
+        // once the moe is wide open settle for the closest combination of the intervals that have tracks
+        while ((tracks = getBestFit(pools, local_context.transition())) == null) {
+            if (!canRelax(local_moe)) {
+                markBestEffort();
+                return getClosestFit(pools);
             }
 
-            setTransitionLengths(local_moe += .005); // relax the moe a bit so we can find something
-
-        } while (tracks == null); // if an acceptable ordering was not found, try again
-
-        setTransitionLengths(transition_moe); // restore moe
+            local_moe = relaxMargin(local_moe + .005f);
+            local_context = context.withTransitionMargin(local_moe);
+        }
 
         return tracks;
     }
 
     /**
-     * Now that the closest column of songs has been found, preform some fine grain searching to find a good duration
+     * Picks one track from each interval that has any, so the sequence is as close to the transition length as
+     * possible however far off that is
      *
-     * @param closest_column closest column of songs that was found and provided by the calling function
-     * @return TrackSimplified array of the track IDS, or null if a good ordering could not be found
+     * @param pools tracks of each interval
+     * @return TrackSimplified array of one track per non-empty interval
      */
-    private TrackSimplified[] getBestFit(int closest_column) {
-
-        TrackSimplified[] tracks = getTracksInColumn(intervals, closest_column);
-        TrackSimplified[] adjacent_tracks; // Tracks that are shorter or longer than closest_column depending on result
-        TrackSimplified[][] track_matrix;
-        DURATION_RESULT result = checkTransitionDuration(tracks);
-
-        // If the duration is acceptable go no further
-        if (result == DURATION_RESULT.ACCEPTABLE) {
-            return tracks;
-        }
-
-        // If there is only one interval there is only one song per column so doing fine grain combination
-        // searching is redundant in this case.
-        if (num_intervals < 1) return null;
-
-        // Otherwise proceed with fine grain searching
-        if (result == DURATION_RESULT.TOO_SHORT || result == DURATION_RESULT.WITHIN_THIRTY_SECONDS_SHORT) {
+    private TrackSimplified[] getClosestFit(TrackPool[] pools) {
 
-            if (closest_column < (limit - 1)) {
-                adjacent_tracks = getTracksInColumn(intervals, closest_column + 1);
-            } else return null; // if the longer tracks are out of bounds no combination will be suitable
-
-        } else { // Too long or within 30 seconds too long
-            if (closest_column > 0) {
-                adjacent_tracks = getTracksInColumn(intervals, closest_column - 1);
-            } else return null; // if the shorter tracks are out of bounds no combination will be suitable
-        }
-
-        track_matrix = new TrackSimplified[num_intervals][2];
-
-        // Populate the track matrix
-        for (int row = 0; row < num_intervals; row++) {
-            track_matrix[row][0] = tracks[row];
-            track_matrix[row][1] = adjacent_tracks[row];
-        }
+        TrackPool[] non_empty = Arrays.stream(pools).filter(pool -> pool.size() > 0).toArray(TrackPool[]::new);
+        int length_ms = context.transition().length_ms();
 
-        tracks = tryTrackCombinations(track_matrix, new TrackSimplified[num_intervals], 0);
+        TrackSimplified[] tracks = getBestFit(non_empty, new DurationWindow(length_ms, 0, Integer.MAX_VALUE));
 
-        return tracks;
+        return tracks == null ? new TrackSimplified[0] : tracks;
     }
 
     /**
-     * recursive function that tries all track combinations to find a combination that fits in the allowable time range
+     * Picks one track from each interval so the sequence fits the transition window, considering every track of every
+     * interval (see DurationSolver.pickOnePerGroup). If even the shortest (or longest) track of every interval is too
+     * long (or short) together, the solver is not run at all.
      *
-     * @param matrix 2d matrix of the closest column and its appropriate adjacent column
-     * @param tracks tracks that are currently being passed down the recursive call chain and will be altered at row
-     * @param row    current row in the matrix to swap in the value of tracks
-     * @return TrackSimplified array of acceptable tracks if found, null otherwise
+     * @param pools  tracks of each interval
+     * @param window acceptable duration of the transition
+     * @return TrackSimplified array of one track per interval, or null if no combination fits the window
      */
-    private TrackSimplified[] tryTrackCombinations(TrackSimplified[][] matrix, TrackSimplified[] tracks, int row) {
-        DURATION_RESULT result;
-        TrackSimplified[] track_combo;
+    private TrackSimplified[] getBestFit(TrackPool[] pools, DurationWindow window) {
 
-        if (row == matrix.length) {
+        int num_intervals = pools.length;
+        long shortest_ms = 0;
+        long longest_ms = 0;
 
-            result = checkTransitionDuration(tracks);
+        for (TrackPool pool : pools) {
+            if (pool.size() == 0) return null;
 
-            if (result == DURATION_RESULT.ACCEPTABLE) {
-                return tracks;
-            } else {
-                return null;
-            }
+            shortest_ms += pool.getWindowDurationMs(0, 1);
+            longest_ms += pool.getWindowDurationMs(pool.size() - 1, 1);
         }
 
-        // index < 2 as there is always 2 columns to analyze
-        for (int column = 0; column < 2; column++) {
-
-            tracks[row] = matrix[row][column];
+        if (shortest_ms > window.max_ms() || longest_ms < window.min_ms()) return null;
 
-            track_combo = tryTrackCombinations(matrix, tracks, row + 1);
-
-            // if the track_combo is null it means the final track array was not acceptable
-            if (track_combo != null) {
-                return track_combo;
-            }
+        int[][] durations_ms = new int[num_intervals][];
+        for (int interval = 0; interval < num_intervals; interval++) {
+            durations_ms[interval] = pools[interval].getDurations();
         }
 
-        return null;
-    }
-
-    /**
-     * Finds the column closest to the target duration
-     *
-     * @return the closest column or -1 if there was not a good column
-     */
-    private int findClosestColumn() {
-        TrackSimplified[] current_tracks;
-
-        // First check if the shortest combination is too long and check if the longest combination is too short
-        current_tracks = getTracksInColumn(intervals, 0);
-        if (checkTransitionDuration(current_tracks) == DURATION_RESULT.TOO_LONG) return -1;
-
-        current_tracks = getTracksInColumn(intervals, limit - 1);
-        if (checkTransitionDuration(current_tracks) == DURATION_RESULT.TOO_SHORT) return -1;
+        int[] picks = DurationSolver.pickOnePerGroup(durations_ms, window);
+        if (picks == null) return null;
 
-        int current_column = limit / 2; // middle column
-        int current_scope = current_column; // portion of the limit we are looking at, will be halved repeatedly
-        int new_column;
-        int distance_to_previous_column = 100;
-        int distance_to_bound = 100;
-        DURATION_RESULT result = DURATION_RESULT.ACCEPTABLE;
+        TrackSimplified[] tracks = new TrackSimplified[num_intervals];
 
-        while (distance_to_previous_column >= 4 && distance_to_bound >= 3) {
-
-            current_tracks = getTracksInColumn(intervals, current_column);
-            result = checkTransitionDuration(current_tracks);
-
-            if (result == DURATION_RESULT.TOO_SHORT) {
-                new_column = (current_column + 1) + (current_scope / 2); // mid-point of the right side of the current
-
-                distance_to_previous_column = new_column - current_column; // new - current since new will be greater
-                distance_to_bound = (limit - 1) - new_column; // distance to right side of TrackSimplified array
-            } else if (result == DURATION_RESULT.TOO_LONG) {
-                new_column = (current_column - 1) - (current_scope / 2); // mid-point of the left side of the current
-
-                distance_to_previous_column = current_column - new_column; // current - new since current is greater
-                distance_to_bound = new_column; // distance from 0
-            } else { // In this case the column is either an acceptable length or 30 seconds off from the target
-                break;
-            }
-
-            current_column = new_column; // update the current column
-            current_scope /= 2; // halve the current scope as our search area halves
-        }
-        // In the cases that we left the while loop due to being within 30 seconds of the allowable duration, or we
-        // got too close to the bounds of the track arrays we are going to search adjacent columns for best fit
-
-        if (result == DURATION_RESULT.TOO_SHORT || result == DURATION_RESULT.WITHIN_THIRTY_SECONDS_SHORT) {
-            return checkForLongerColumn(intervals, current_column);
-        } else if (result == DURATION_RESULT.TOO_LONG || result == DURATION_RESULT.WITHIN_THIRTY_SECONDS_LONG) {
-            return checkForShorterColumn(intervals, current_column);
-        } else if (result == DURATION_RESULT.ACCEPTABLE) {
-            return current_column;
-        } else {
-            return -1;
+        for (int interval = 0; interval < num_intervals; interval++) {
+            tracks[interval] = pools[interval].getTrack(picks[interval]);
         }
+
+        return tracks;
     }
 
 
@@ -303,42 +230,57 @@ public class GenerateClassic extends GeneratePlaylist {
 
 
         HashMap<Integer, TrackSimplified[]> sorted_intervals = new HashMap<>();
+        List<Future<TrackSimplified[]>> interval_futures = new ArrayList<>();
 
         float query_bpm = initializeQueryBPM(is_warmup); // will be updated in for-loop
         float query_energy = initializeQueryEnergy(is_warmup); // will be updated in for-loop
 
         // We need to call the recommendations endpoint for each interval, fetching a few songs in that interval's range
-        // This yields better results than requesting a lot of songs in a large range
-        for (int current_interval = 0; current_interval < num_intervals; current_interval++) {
+        // This yields better results than requesting a lot of songs in a large range. Every interval's query is known
+        // up front, so they are all started at once
+        for (int current_interval = 0; current_interval < context.num_intervals(); current_interval++) {
 
+            float interval_bpm = query_bpm;
+            float interval_energy = query_energy;
 
-            TrackSimplified[] recommended_tracks;
-            int local_offset = bpm_offset;
-            float local_energy_offset = energy_offset;
+            interval_futures.add(submit(() -> getIntervalRecommendations(interval_bpm, interval_energy)));
 
-            do {
+            // Update BPM to the next interval
+            query_bpm = updateQueryBPM(query_bpm, is_warmup);
+            query_energy = updateQueryEnergy(query_energy, is_warmup);
+        }
 
-                recommended_tracks = getSortedRecommendations(limit, query_bpm - local_offset,
-                        query_bpm + local_offset, query_bpm, query_energy - local_energy_offset,
-                        query_energy + local_energy_offset, query_energy);
+        List<TrackSimplified[]> interval_tracks = awaitAll(interval_futures, GetRecommendationsException.class);
 
-                local_offset++;
-                local_energy_offset += .01;
+        for (int current_interval = 0; current_interval < interval_tracks.size(); current_interval++) {
+            sorted_intervals.put(current_interval, interval_tracks.get(current_interval));
+        }
 
-                System.out.println("offset: " + local_offset);
-                System.out.println("energy offset: " + local_energy_offset);
+        return sorted_intervals;
+    }
 
-            } while (recommended_tracks.length < limit);
+    /**
+     * Fetches tracks for a single warmup/wind-down interval, widening the bpm and energy range until enough tracks
+     * are returned. If the search runs out of budget the interval has fewer (possibly no) tracks, which
+     * findTransitionTracks settles for once its margin is wide open.
+     *
+     * @param query_bpm    target bpm of the interval
+     * @param query_energy target energy of the interval
+     * @return TrackSimplified array of the interval's tracks sorted by duration
+     * @throws GetRecommendationsException if recommendation API call encounters an issue
+     */
+    private TrackSimplified[] getIntervalRecommendations(float query_bpm, float query_energy)
+            throws GetRecommendationsException {
 
-            sorted_intervals.put(current_interval, recommended_tracks);
+        return WideningSearch.search(local_offset -> {
 
-            // Update BPM to the next interval
-            query_bpm = updateQueryBPM(query_bpm, is_warmup);
-            query_energy = updateQueryEnergy(query_energy, is_warmup);
-            System.out.println("query_energy: " + query_energy);
-        }
+            float local_energy_offset = getEnergyOffset(local_offset);
 
-        return sorted_intervals;
+            return getSortedRecommendations(limit, query_bpm - local_offset,
+                    query_bpm + local_offset, query_bpm, query_energy - local_energy_offset,
+                    query_energy + local_energy_offset, query_energy);
+
+        }, recommended_tracks -> recommended_tracks.length >= limit, bpm_offset, deadline, context.search_budget());
     }
 
 
@@ -347,115 +289,76 @@ public class GenerateClassic extends GeneratePlaylist {
     //                                  //
 
     /**
-     * Gets the target tracks for the target sequence
+     * Gets the target tracks for the target sequence. Every subset of the fetched candidates is considered, and the
+     * range is widened (see WideningSearch) until some subset fits; if none does within the search's budget the
+     * closest one is used.
      *
      * @return TrackSimplified array of the track IDs
      */
     private TrackSimplified[] getTargetTracks() throws GetRecommendationsException {
 
-        int target_length_min = target_length_ms / 60_000;
+        int target_length_min = context.target().length_ms() / 60_000;
         // number of tracks we want in the target sequence
         int num_tracks = Math.round(target_length_min / avg_song_len);
-
-        int local_offset = bpm_offset;
         int local_limit = num_tracks * 2;
-        float local_moe = margin_of_error;
-        float local_energy_offset = energy_offset;
 
-        do {
+        // Each fetch is solved once, and the search keeps the solution of the fetch it settles on
+        TargetCandidates found = WideningSearch.search(local_offset -> {
 
+            float local_energy_offset = getEnergyOffset(local_offset);
             TrackSimplified[] recommended_tracks = getSortedRecommendations(local_limit,
                     target_bpm - local_offset, target_bpm + local_offset, target_bpm,
                     target_energy - local_energy_offset, target_energy + local_energy_offset, target_energy);
 
-            if (recommended_tracks != null && recommended_tracks.length >= local_limit) {
-                TrackSimplified[] tracks = findBestTargetTracks(recommended_tracks, num_tracks);
+            if (recommended_tracks == null) recommended_tracks = new TrackSimplified[0];
 
-                if (tracks != null) return tracks;
+            TrackPool pool = TrackPool.of(recommended_tracks);
+            return new TargetCandidates(pool, findBestTargetTracks(pool, num_tracks));
 
-            }
+        }, candidates -> candidates.best_fit() != null, bpm_offset, deadline, context.search_budget());
 
-            System.out.println(local_offset);
-            local_offset++;
-            local_energy_offset += .01;
-            //setTargetLengths(local_moe += .005);
+        TrackPool candidates = found.pool();
+        if (found.best_fit() != null) return candidates.getTracks(found.best_fit());
 
-        } while (true);
-    }
-
-    /**
-     * Grabs the first batch of songs from the beginning of the tracks array and shifts the selected group
-     * of songs to the right until a song is found, or we reach a point where it is clear no grouping is acceptable
-     *
-     * @param tracks    TrackSimplified array to search for a good ordering of target songs
-     * @param num_songs number of songs we want to gather and check against the desired duration
-     * @return TrackSimplified array of songs that fit in the target duration window, null otherwise
-     */
-    private TrackSimplified[] findBestTargetTracks(TrackSimplified[] tracks, int num_songs) {
+        // Nothing fit the window, settle for the closest subset (or every candidate if there are too few)
+        markBestEffort();
+        if (candidates.size() <= num_tracks) return candidates.getTracks();
 
-        Deque<TrackSimplified> deque = new ArrayDeque<>();
-        int index = 0;
-        DURATION_RESULT result;
-        TrackSimplified current_track;
+        int[] picks = DurationSolver.pickClosestSubset(candidates.getDurations(), num_tracks,
+                context.target().length_ms());
 
-        // Get the first batch of songs into the deque
-        for (; index < num_songs; index++) {
-            current_track = tracks[index];
-            deque.add(current_track);
-        }
-
-        result = checkTargetDuration(deque);
-
-        if (result == DURATION_RESULT.ACCEPTABLE) return deque.toArray(TrackSimplified[]::new);
-        // If the shortest combination of tracks is too long there is no suitable combination so return null
-        if (result == DURATION_RESULT.TOO_LONG) return null;
-
-        for (; index < tracks.length; index++) {
-
-            current_track = tracks[index];
-
-            // This essentially shifts the group of tracks we are analyzing to the right (longer) side
-            deque.removeFirst(); // remove the shortest track
-            deque.add(current_track); // add the next track in line
-
-            result = checkTargetDuration(deque);
-
-            if (result == DURATION_RESULT.ACCEPTABLE) return deque.toArray(TrackSimplified[]::new);
-
-            if (result == DURATION_RESULT.TOO_LONG) return null; // If now too long there is no acceptable combination
-        }
-
-        return null;
+        return candidates.getTracks(picks);
     }
 
-    //                                             //
-    // Initializing / Updating Utilities           //
-    //                                             //
-
-
     /**
-     * Sets the min and max Target lengths based on the provided margin of error
+     * The energy range is widened along with the bpm range, .01 for every bpm past bpm_offset
      *
-     * @param margin_of_error margin of error used in setting the min and max target lengths
+     * @param local_offset current bpm offset
+     * @return energy offset to use with it
      */
-    private void setTargetLengths(float margin_of_error) {
-        // MilliSeconds of length that is acceptable for the target sequence based on our MOE
-        min_target_length_ms = target_length_ms - (int) (target_length_ms * margin_of_error);
-        max_target_length_ms = target_length_ms + (int) (target_length_ms * margin_of_error);
+    private float getEnergyOffset(int local_offset) {
+        return energy_offset + .01f * (local_offset - bpm_offset);
     }
 
     /**
-     * Sets the min and max transition lengths based on the provided margin of error
+     * Picks the subset of num_songs tracks whose total duration fits the target window and is closest to its length.
+     * Candidates that can not fit the window at all (see TrackPool.canFit) are ruled out before solving.
      *
-     * @param margin_of_error margin of error used in setting the min and max transition lengths
+     * @param pool      candidate target songs
+     * @param num_songs number of songs we want in the target sequence
+     * @return indices into pool of the songs that fit in the target duration window, null otherwise
      */
-    private void setTransitionLengths(float margin_of_error) {
+    private int[] findBestTargetTracks(TrackPool pool, int num_songs) {
+        if (!pool.canFit(num_songs, context.target())) return null;
 
-        // MilliSeconds of length that is acceptable for the warmup / wind-down sequence based on our MOE
-        min_transition_length_ms = transition_length_ms - (int) (transition_length_ms * margin_of_error);
-        max_transition_length_ms = transition_length_ms + (int) (transition_length_ms * margin_of_error);
+        return DurationSolver.pickSubset(pool.getDurations(), num_songs, context.target());
     }
 
+    //                                             //
+    // Initializing / Updating Utilities           //
+    //                                             //
+
+
     /**
      * Initializes query_bpm based on isWarmup
      *
@@ -506,15 +409,13 @@ public class GenerateClassic extends GeneratePlaylist {
     /**
      * Calculate the bpm difference between each interval in the warmup/wind-down sequence
      *
+     * @param num_intervals number of intervals in the warmup/wind-down sequence
      * @return (float) BPM difference between intervals
      */
-    private float findBpmDifference() {
+    private float findBpmDifference(int num_intervals) {
         // Special case for workouts less than 45 minutes, we want one interval with the bpm difference being halfway
-        // between the resting bpm and target bpm. We also want to relax the MOE a bit here
+        // between the resting bpm and target bpm
         if (num_intervals < 2) {
-            num_intervals = 1;
-            setTransitionLengths(transition_moe);
-
             return (float) ((target_bpm - resting_bpm) / 2);
         } else {
             // By finding the difference between the target bpm and resting bpm and finally dividing by the number of
@@ -523,7 +424,7 @@ public class GenerateClassic extends GeneratePlaylist {
         }
     }
 
-    private float findEnergyDifference(){
+    private float findEnergyDifference(int num_intervals){
         if (num_intervals < 2) {
 
             return (float) ((target_energy - starting_energy) / 2);
@@ -2,17 +2,22 @@ package PlaylistGenerating.PlaylistTypes;
 
 import ExceptionClasses.BrowsingExceptions.GetRecommendationsException;
 import ExceptionClasses.TrackExceptions.GetAudioFeaturesForSeveralTracksException;
-import ExceptionClasses.TrackExceptions.GetAudioFeaturesForTrackException;
 import SpotifyUtilities.RecommendationArguments;
+import SpotifyUtilities.TrackFeatures;
 import SpotifyUtilities.TrackUtilities;
+import SpotifyUtilities.UnplayableTracks;
 import com.neovisionaries.i18n.CountryCode;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.model_objects.specification.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Objects;
+import java.util.TreeSet;
 import java.util.stream.Stream;
 
 import static SpotifyUtilities.BrowsingUtilities.getRecommendations;
@@ -21,6 +26,10 @@ import static SpotifyUtilities.TrackUtilities.*;
 public class CommonUtilities {
 
     private static final float energy_offset = .1f;
+    private static final float replacement_tempo_step = 10; // Tempo width of a replacement group, and how far each round widens the query
+    private static final int replacement_call_budget = 10; // Most recommendation calls spent replacing one playlist's tracks
+    private static final float default_tempo = 120; // Used for replacements when no track of the playlist has features
+    private static final float default_energy = .5f;
 
     /**
      * Loops through all the given tracks and stores their URIs in a string array which is then returned
@@ -131,15 +140,17 @@ public class CommonUtilities {
         return stream.toArray(TrackSimplified[]::new);
     }
 
-    public static void printPlaylistTempos(SpotifyApi spotifyApi, TrackSimplified[] tracks)
-            throws GetAudioFeaturesForSeveralTracksException{
-
-        String[] ids = getTrackIDs(tracks);
+    /**
+     * Prints the tempo and energy of each track from the features we already know, without calling Spotify
+     *
+     * @param tracks tracks to print the tempo and energy of
+     */
+    public static void printPlaylistTempos(TrackSimplified[] tracks){
 
-        AudioFeatures[] audio_features = getAudioFeaturesForSeveralTracks(spotifyApi, ids);
+        for(TrackFeatures features: getKnownFeatures(getTrackIDs(tracks))){
 
-        for(AudioFeatures audio_feature: audio_features){
-            System.out.println("tempo: " + audio_feature.getTempo() + " energy: " + audio_feature.getEnergy());
+            if(features == null) System.out.println("tempo: unknown energy: unknown");
+            else System.out.println("tempo: " + features.tempo() + " energy: " + features.energy());
         }
     }
 
@@ -210,6 +221,17 @@ public class CommonUtilities {
         int track_index;
     }
 
+    /**
+     * Duplicates with similar tempo and energy, replaced together from the same recommendation queries
+     */
+    static class ReplacementGroup {
+        ArrayList<DuplicateTrack> duplicates = new ArrayList<>(); // duplicates still needing a replacement
+        ArrayList<TrackSimplified> candidates = new ArrayList<>(); // fetched replacements not used yet
+        float tempo_sum = 0;
+        float energy_sum = 0;
+        int size = 0;
+    }
+
     public static String createCommaSeperatedString(Artist[] artists){
 
         StringBuilder string_builder = new StringBuilder();
@@ -269,10 +291,28 @@ public class CommonUtilities {
         }
     }
 
+    /**
+     * Replaces every duplicate and non-playable track of the playlist. Features for all of them are fetched in one
+     * call, duplicates with a similar tempo and energy are grouped, and each group is replaced from a single
+     * recommendation query (widened round after round for duplicates nothing close enough was found for), picking the
+     * replacement with the closest duration. At most replacement_call_budget recommendation calls are made; past that,
+     * duplicates get the closest candidate fetched so far (up to twice their duration), or are left in place if there
+     * is none.
+     *
+     * @param spotify_api  api object used to make api calls
+     * @param tracks       tracks of the playlist, replacements are written into this array
+     * @param genres       seed genres for replacements
+     * @param seed_artists seed artists for replacements
+     * @param seed_tracks  seed tracks for replacements
+     * @param market       market the playlist will be played in
+     * @return the provided tracks array
+     * @throws GetAudioFeaturesForSeveralTracksException if fetching the features of the tracks fails
+     * @throws GetRecommendationsException               if fetching replacements fails
+     */
     public static TrackSimplified[] eliminateDupesAndNonPlayable(SpotifyApi spotify_api, TrackSimplified[] tracks,
                                                                  String genres, String seed_artists, String seed_tracks,
                                                                  CountryCode market)
-            throws GetAudioFeaturesForTrackException, GetRecommendationsException {
+            throws GetAudioFeaturesForSeveralTracksException, GetRecommendationsException {
 
         HashMap<TrackSimplified, Integer> track_map = new HashMap<>();
         // Store all the tracks that need replacement here
@@ -282,7 +322,10 @@ public class CommonUtilities {
         for (int index = 0; index < tracks.length; index++) {
 
             TrackSimplified track = tracks[index];
-            boolean is_playable = track.getIsPlayable();
+            boolean is_playable = TrackUtilities.isPlayable(track, market);
+
+            // Remember it, so no other playlist for this market picks it before replacing it
+            if (!is_playable) UnplayableTracks.add(track.getId(), market);
 
             // If the track is not already in the map it will return null from the .get() method
             if (track_map.get(track) == null && is_playable) {
@@ -293,84 +336,159 @@ public class CommonUtilities {
             }
         }
 
-        for (DuplicateTrack duplicate : duplicates) {
-            TrackSimplified duplicate_track = duplicate.track;
+        if (duplicates.isEmpty()) return tracks;
 
-            float energy = getTrackEnergy(spotify_api, duplicate_track);
+        System.out.println("Replacing " + duplicates.size() + " tracks");
 
-            TrackSimplified replacement =
-                    replaceTrack(spotify_api, track_map, duplicate_track, genres, seed_artists, seed_tracks, energy, market);
+        Collection<ReplacementGroup> groups = groupDuplicates(spotify_api, tracks, duplicates);
+        int calls = 0;
 
-            int track_index = duplicate.track_index; // The index we need to put the new non-duplicate song into
+        for (int round = 0; calls < replacement_call_budget; round++) {
 
-            tracks[track_index] = replacement; // Replace the song
-            track_map.put(replacement, track_index); // update the track map, so we don't duplicate with replacements
-        }
-        return tracks;
-    }
+            boolean is_done = true;
 
-    private static TrackSimplified replaceTrack(SpotifyApi spotify_api, HashMap<TrackSimplified, Integer> track_map,
-                                                TrackSimplified track, String genres, String seed_artists, String seed_tracks,
-                                                float energy, CountryCode market)
-            throws GetAudioFeaturesForTrackException, GetRecommendationsException {
+            for (ReplacementGroup group : groups) {
 
-        System.out.println("Replacing");
+                if (group.duplicates.isEmpty()) continue;
+                if (calls == replacement_call_budget) break;
 
-        AudioFeatures track_features = TrackUtilities.getAudioFeaturesForTrack(spotify_api, track.getId());
-        float tempo = track_features.getTempo();
-        int target_duration_ms = track_features.getDurationMs();
-        int offset = 1;
-        int limit = 21;
-        float margin_of_error = .1f;
+                is_done = false;
+                float tempo = group.tempo_sum / group.size;
+                float energy = group.energy_sum / group.size;
+                float tempo_offset = replacement_tempo_step * (round + 1); // relax constraints every round
+                float local_energy_offset = energy_offset + .05f * round;
+                int limit = Math.min(100, Math.max(21, group.duplicates.size() * 5));
 
-        while(true) {
-            RecommendationArguments current_arguments = new RecommendationArguments(
-                    spotify_api, limit, genres, seed_artists, seed_tracks,
-                    tempo - offset, tempo + offset, tempo, energy - energy_offset,
-                    energy + energy_offset, energy, market);
+                RecommendationArguments current_arguments = new RecommendationArguments(
+                        spotify_api, limit, genres, seed_artists, seed_tracks,
+                        tempo - tempo_offset, tempo + tempo_offset, tempo, energy - local_energy_offset,
+                        energy + local_energy_offset, energy, market);
 
-            Recommendations recommendations = getRecommendations(current_arguments);
-            TrackSimplified[] recommended_tracks = recommendations.getTracks();
+                TrackSimplified[] recommended_tracks = getRecommendations(current_arguments).getTracks();
+                calls++;
 
-            // relax constraints
-            if(recommended_tracks == null || recommended_tracks.length < limit){
-                offset++;
-                continue;
-            }
+                if (recommended_tracks != null) {
+                    for (TrackSimplified candidate : recommended_tracks) {
 
-            Arrays.sort(recommended_tracks, duration_comparator);
+                        // If the candidate is a duplicate or not playable it can not be a replacement
+                        if (track_map.get(candidate) != null || group.candidates.contains(candidate)) continue;
+                        if (!TrackUtilities.isPlayable(candidate, market)) continue;
 
-            TrackSimplified closest_track = null;
+                        group.candidates.add(candidate);
+                    }
+                }
 
-            for (TrackSimplified current_track : recommended_tracks) {
+                assignReplacements(tracks, track_map, group, .1f + .01f * round);
+            }
 
-                boolean is_playable = current_track.getIsPlayable();
+            if (is_done) return tracks;
+        }
 
-                // If the track we are considering is a duplicate or not playable continue to the next candidate
-                if (track_map.get(current_track) != null || !is_playable) {
-                    continue;
-                }
+        // Out of budget, settle for the closest durations fetched so far
+        for (ReplacementGroup group : groups) {
+            assignReplacements(tracks, track_map, group, 1f);
 
-                // AudioFeatures current_features = getAudioFeaturesForTrack(spotify_api, current_track.getId());
+            if (!group.duplicates.isEmpty()) {
+                System.out.println("No replacement found for " + group.duplicates.size() + " tracks");
+            }
+        }
 
-                // Compare the durations of the closest track and the current, replacing the closest track with the
-                // current if the current track is closer to the desired duration
-                closest_track = getTrackWithClosestDuration(target_duration_ms, closest_track, current_track);
+        return tracks;
+    }
+
+    /**
+     * Groups the duplicates by tempo and energy using features fetched in one call for the duplicates and the tracks
+     * right next to them. A duplicate without features takes the features of a neighbour that has them.
+     *
+     * @param spotify_api api object used to make api calls
+     * @param tracks      tracks of the playlist
+     * @param duplicates  tracks that need replacing
+     * @return the groups of duplicates
+     * @throws GetAudioFeaturesForSeveralTracksException if fetching the features fails
+     */
+    private static Collection<ReplacementGroup> groupDuplicates(SpotifyApi spotify_api, TrackSimplified[] tracks,
+                                                                ArrayList<DuplicateTrack> duplicates)
+            throws GetAudioFeaturesForSeveralTracksException {
+
+        // Only the duplicates and their direct neighbours are needed, not the whole playlist
+        TreeSet<Integer> indexes = new TreeSet<>();
 
+        for (DuplicateTrack duplicate : duplicates) {
+            for (int index = duplicate.track_index - 1; index <= duplicate.track_index + 1; index++) {
+                if (index >= 0 && index < tracks.length) indexes.add(index);
             }
+        }
+
+        TrackSimplified[] batch = indexes.stream().map(index -> tracks[index]).toArray(TrackSimplified[]::new);
+        AudioFeatures[] batch_features = getAudioFeaturesForSeveralTracks(spotify_api, getTrackIDs(batch));
+        HashMap<Integer, AudioFeatures> features = new HashMap<>();
+        int position = 0;
+
+        for (int index : indexes) features.put(index, batch_features[position++]);
+
+        HashMap<Long, ReplacementGroup> groups = new HashMap<>();
+
+        for (DuplicateTrack duplicate : duplicates) {
+
+            int index = duplicate.track_index;
+            AudioFeatures feature = features.get(index);
+
+            if (feature == null) feature = features.get(index - 1);
+            if (feature == null) feature = features.get(index + 1);
+
+            float tempo = feature == null ? default_tempo : feature.getTempo();
+            float energy = feature == null ? default_energy : feature.getEnergy();
 
-            if(isGoodDuration(target_duration_ms, closest_track, margin_of_error)) return closest_track;
+            long key = ((long) Math.round(tempo / replacement_tempo_step) << 32)
+                    | Math.round(energy / energy_offset);
 
-            offset++; // relax constraints
-            margin_of_error += .01;
+            ReplacementGroup group = groups.computeIfAbsent(key, ignored -> new ReplacementGroup());
+            group.duplicates.add(duplicate);
+            group.tempo_sum += tempo;
+            group.energy_sum += energy;
+            group.size++;
         }
+
+        return groups.values();
     }
 
-    public static float getTrackEnergy(SpotifyApi spotify_api, TrackSimplified track) throws GetAudioFeaturesForTrackException{
+    /**
+     * Gives each duplicate of the group the unused candidate closest to its duration, if it is within the margin of
+     * error. Longer duplicates pick first as fewer candidates are usually close to them.
+     *
+     * @param tracks          tracks of the playlist, replacements are written into this array
+     * @param track_map       tracks already in the playlist and the index they are at
+     * @param group           group to assign replacements in
+     * @param margin_of_error how far from the duplicate's duration a replacement may be
+     */
+    private static void assignReplacements(TrackSimplified[] tracks, HashMap<TrackSimplified, Integer> track_map,
+                                           ReplacementGroup group, float margin_of_error) {
+
+        group.duplicates.sort(Comparator.comparingInt((DuplicateTrack duplicate) ->
+                duplicate.track.getDurationMs()).reversed());
+
+        Iterator<DuplicateTrack> iterator = group.duplicates.iterator();
 
-        AudioFeatures feature = getAudioFeaturesForTrack(spotify_api, track.getId());
+        while (iterator.hasNext()) {
+            DuplicateTrack duplicate = iterator.next();
+            int target_duration_ms = duplicate.track.getDurationMs();
+            TrackSimplified closest_track = null;
 
-        return feature.getEnergy();
+            for (TrackSimplified candidate : group.candidates) {
+                // Compare the durations of the closest track and the current, replacing the closest track with the
+                // current if the current track is closer to the desired duration
+                closest_track = getTrackWithClosestDuration(target_duration_ms, closest_track, candidate);
+            }
+
+            if (closest_track == null || !isGoodDuration(target_duration_ms, closest_track, margin_of_error)) continue;
+
+            int track_index = duplicate.track_index; // The index we need to put the new non-duplicate song into
+
+            tracks[track_index] = closest_track; // Replace the song
+            track_map.put(closest_track, track_index); // update the track map, so we don't duplicate with replacements
+            group.candidates.remove(closest_track);
+            iterator.remove();
+        }
     }
 
     /**
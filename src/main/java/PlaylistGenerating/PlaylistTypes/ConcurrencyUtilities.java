@@ -0,0 +1,146 @@
+package PlaylistGenerating.PlaylistTypes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent pieces of a playlist generation (phases, intervals) at the same time. They spend nearly all of
+ * their time waiting on Spotify, so the outbound rate is left to the RequestGovernor and the tasks run either on
+ * virtual threads (see Server.configureThreadPool) or on a bounded pool of daemon threads.
+ * <p>
+ * Tasks fan out further (a Classic phase waits on its intervals), so on the bounded pool a task waiting for children
+ * that no thread has picked up yet runs them itself (see await). That way the waiting tasks can never hold every
+ * thread while the children they wait for sit in the queue.
+ */
+public class ConcurrencyUtilities {
+
+    private static final AtomicInteger thread_count = new AtomicInteger();
+
+    private static volatile ExecutorService executor = newBoundedPool(32);
+
+    /**
+     * Runs the tasks on a pool of at most max_threads daemon threads, further tasks wait in its queue
+     *
+     * @param max_threads most tasks that run at the same time on their own thread
+     * @throws IllegalArgumentException if max_threads is below one
+     */
+    public static void useBoundedPool(int max_threads) {
+        useExecutor(newBoundedPool(max_threads));
+    }
+
+    /**
+     * Runs the tasks on the provided executor (such as a virtual thread per task executor), tasks already running on
+     * the previous one are left to finish
+     *
+     * @param task_executor executor to submit tasks to
+     */
+    public static void useExecutor(ExecutorService task_executor) {
+        ExecutorService previous = executor;
+
+        executor = task_executor;
+        previous.shutdown();
+    }
+
+    /**
+     * @param max_threads most threads in the pool
+     * @return pool whose threads are only kept while there is work for them
+     */
+    private static ExecutorService newBoundedPool(int max_threads) {
+        if (max_threads < 1) throw new IllegalArgumentException("max_threads must be at least 1");
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(max_threads, max_threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "generation-task-" + thread_count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+
+        return pool;
+    }
+
+    /**
+     * Starts the provided task on the shared executor
+     *
+     * @param task task to run, may throw checked exceptions
+     * @return Future holding the result of the task
+     */
+    public static <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Waits for every provided future and returns their results in order. If any of them fails the rest are
+     * cancelled and the failure is thrown.
+     *
+     * @param futures        futures to wait for
+     * @param exception_type checked exception the tasks can throw, it is rethrown as is
+     * @return results of the futures in the same order as the futures
+     * @throws E if a task threw an exception of the provided type
+     */
+    public static <T, E extends Exception> List<T> awaitAll(List<Future<T>> futures, Class<E> exception_type)
+            throws E {
+
+        try {
+            List<T> results = new ArrayList<>(futures.size());
+
+            for (Future<T> future : futures) {
+                results.add(await(future, exception_type));
+            }
+
+            return results;
+
+        } catch (RuntimeException | Error ex) {
+            cancelAll(futures);
+            throw ex;
+        } catch (Exception ex) {
+            cancelAll(futures);
+            throw exception_type.cast(ex); // await only throws E or unchecked exceptions
+        }
+    }
+
+    /**
+     * Waits for the provided future, unwrapping the exception thrown by its task. If no thread has started the task
+     * yet it is run on the calling thread instead of waiting for one (a task only ever runs once, so a pool thread
+     * picking it up later skips it).
+     *
+     * @param future         future to wait for
+     * @param exception_type checked exception the task can throw, it is rethrown as is
+     * @return result of the future
+     * @throws E if the task threw an exception of the provided type
+     */
+    public static <T, E extends Exception> T await(Future<T> future, Class<E> exception_type) throws E {
+        try {
+            if (future instanceof RunnableFuture<T> task && !task.isDone()) task.run();
+
+            return future.get();
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new CancellationException("Interrupted while waiting for a generation task");
+
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+
+            if (exception_type.isInstance(cause)) throw exception_type.cast(cause);
+            if (cause instanceof RuntimeException runtime_exception) throw runtime_exception;
+            if (cause instanceof Error error) throw error;
+
+            throw new CompletionException(cause);
+        }
+    }
+
+    /**
+     * Cancels (interrupting if running) every provided future
+     *
+     * @param futures futures to cancel
+     */
+    private static void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package PlaylistGenerating.PlaylistTypes;
+
+/**
+ * Point in time a playlist generation should be finished by. Loops that would otherwise keep relaxing their margins
+ * or widening their queries check it, and once it has passed settle for the closest fit they have.
+ * <p>
+ * {@link #expires_at_ms} expires_at_ms: wall clock time (System.currentTimeMillis) the deadline passes at<p>
+ */
+public record Deadline(long expires_at_ms) {
+
+    private static final Deadline NEVER = new Deadline(Long.MAX_VALUE);
+
+    /**
+     * @param timeout_ms milliseconds from now
+     * @return deadline that passes timeout_ms from now
+     */
+    public static Deadline in(long timeout_ms) {
+        long now = System.currentTimeMillis();
+
+        return new Deadline(timeout_ms >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeout_ms);
+    }
+
+    /**
+     * @return deadline that never passes
+     */
+    public static Deadline never() {
+        return NEVER;
+    }
+
+    /**
+     * @return true once the deadline has passed
+     */
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= expires_at_ms;
+    }
+}
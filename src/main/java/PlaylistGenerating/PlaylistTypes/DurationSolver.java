@@ -0,0 +1,363 @@
+package PlaylistGenerating.PlaylistTypes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Dynamic programming solvers for fitting track durations into a DurationWindow. Durations are bucketed to whole
+ * seconds, so the tables stay small (a few thousand entries for a transition sequence) no matter how many candidates
+ * there are, and every solution the table proposes is checked against the exact durations before it is returned.
+ */
+public class DurationSolver {
+
+    private static final int BUCKET_MS = 1_000;
+
+    /**
+     * Picks one candidate from every group so the total duration fits the window, as close to its length as possible.
+     * Used for transition sequences, where each interval (group) contributes exactly one track.
+     *
+     * @param durations_ms durations of the candidates of each group, durations_ms[group][candidate]
+     * @param window       acceptable total duration
+     * @return index of the picked candidate for each group, or null if no combination fits the window
+     */
+    public static int[] pickOnePerGroup(int[][] durations_ms, DurationWindow window) {
+
+        int num_groups = durations_ms.length;
+        int max_total_s = 0;
+
+        for (int[] group : durations_ms) {
+            int longest_s = 0;
+            for (int duration_ms : group) longest_s = Math.max(longest_s, toBucket(duration_ms));
+            max_total_s += longest_s;
+        }
+
+        // picked[group][total_s] is the candidate of the group that first reached total_s, -1 if unreachable
+        short[][] picked = new short[num_groups][max_total_s + 1];
+        boolean[] reachable = new boolean[max_total_s + 1];
+        reachable[0] = true;
+
+        for (int group = 0; group < num_groups; group++) {
+            boolean[] next_reachable = new boolean[max_total_s + 1];
+            Arrays.fill(picked[group], (short) -1);
+
+            for (int total_s = 0; total_s <= max_total_s; total_s++) {
+                if (!reachable[total_s]) continue;
+
+                for (int candidate = 0; candidate < durations_ms[group].length; candidate++) {
+                    int next_total_s = total_s + toBucket(durations_ms[group][candidate]);
+
+                    if (next_total_s <= max_total_s && !next_reachable[next_total_s]) {
+                        next_reachable[next_total_s] = true;
+                        picked[group][next_total_s] = (short) candidate;
+                    }
+                }
+            }
+
+            reachable = next_reachable;
+        }
+
+        // Rounding can move each group's duration by half a bucket, so look slightly past the window and check exactly
+        int slack_s = (num_groups + 1) / 2 + 1;
+        int first_s = Math.max(0, window.min_ms() / BUCKET_MS - slack_s);
+        int last_s = Math.min(max_total_s, window.max_ms() / BUCKET_MS + slack_s);
+
+        for (int total_s : closestFirst(first_s, last_s, window.length_ms() / BUCKET_MS)) {
+            if (!reachable[total_s]) continue;
+
+            int[] picks = new int[num_groups];
+            int remaining_s = total_s;
+            int total_ms = 0;
+
+            for (int group = num_groups - 1; group >= 0; group--) {
+                picks[group] = picked[group][remaining_s];
+                remaining_s -= toBucket(durations_ms[group][picks[group]]);
+                total_ms += durations_ms[group][picks[group]];
+            }
+
+            if (total_ms >= window.min_ms() && total_ms <= window.max_ms()) return picks;
+        }
+
+        return null;
+    }
+
+    /**
+     * Picks exactly k candidates so their total duration fits the window, as close to its length as possible. Used for
+     * the target sequence, where k tracks are picked out of a larger set of candidates.
+     *
+     * @param durations_ms durations of the candidates
+     * @param k            number of candidates to pick
+     * @param window       acceptable total duration
+     * @return indices of the picked candidates in ascending order, or null if no k candidates fit the window
+     */
+    public static int[] pickSubset(int[] durations_ms, int k, DurationWindow window) {
+        if (k > durations_ms.length || window.max_ms() < 0) return null;
+
+        int slack_s = (k + 1) / 2 + 1;
+        int max_total_s = window.max_ms() / BUCKET_MS + slack_s;
+        long[][][] layers = buildSubsetLayers(durations_ms, k, max_total_s);
+        int first_s = Math.max(0, window.min_ms() / BUCKET_MS - slack_s);
+
+        for (int total_s : closestFirst(first_s, max_total_s, window.length_ms() / BUCKET_MS)) {
+            int[] picks = traceSubset(layers, durations_ms, k, total_s);
+            if (picks == null) continue;
+
+            int total_ms = 0;
+            for (int pick : picks) total_ms += durations_ms[pick];
+
+            if (total_ms >= window.min_ms() && total_ms <= window.max_ms()) return picks;
+        }
+
+        return null;
+    }
+
+    /**
+     * Picks exactly k candidates whose total duration is as close as possible to the provided length, even if it is
+     * far off. Used as the last resort when no subset fits the window.
+     *
+     * @param durations_ms durations of the candidates
+     * @param k            number of candidates to pick
+     * @param length_ms    desired total duration
+     * @return indices of the picked candidates in ascending order, or null if there are fewer than k candidates
+     */
+    public static int[] pickClosestSubset(int[] durations_ms, int k, int length_ms) {
+        if (k > durations_ms.length) return null;
+
+        int[] sorted_s = Arrays.stream(durations_ms).map(DurationSolver::toBucket).sorted().toArray();
+        int max_total_s = 0;
+        for (int index = sorted_s.length - k; index < sorted_s.length; index++) max_total_s += sorted_s[index];
+
+        long[][][] layers = buildSubsetLayers(durations_ms, k, max_total_s);
+
+        for (int total_s : closestFirst(0, max_total_s, length_ms / BUCKET_MS)) {
+            int[] picks = traceSubset(layers, durations_ms, k, total_s);
+            if (picks != null) return picks;
+        }
+
+        return null;
+    }
+
+    /**
+     * Packs candidates into as many bins (intervals) of exactly per_bin candidates as possible, each bin fitting the
+     * window and no candidate used twice. Bins are filled one at a time, each anchored on the shortest remaining
+     * candidate that can still be part of a fitting bin, with the rest of the bin picked by pickSubset. Anchoring on
+     * the shortest candidate keeps short tracks from being stranded, which is what usually limits how many bins fit.
+     *
+     * @param durations_ms durations of the candidates
+     * @param num_bins     number of bins wanted
+     * @param per_bin      number of candidates in each bin
+     * @param window       acceptable total duration of a bin
+     * @return indices of the candidates in each filled bin, between 0 and num_bins bins
+     */
+    public static int[][] packBins(int[] durations_ms, int num_bins, int per_bin, DurationWindow window) {
+
+        int[] by_duration = IntStream.range(0, durations_ms.length).boxed()
+                .sorted(Comparator.comparingInt(index -> durations_ms[index]))
+                .mapToInt(Integer::intValue).toArray();
+
+        return packBins(durations_ms, by_duration, num_bins, per_bin, window);
+    }
+
+    /**
+     * Same as above, for the tracks of a pool, using its duration order. A pool whose tracks can not fit the window
+     * at all (see TrackPool.canFit) is ruled out without trying any anchor.
+     *
+     * @param pool     candidates
+     * @param num_bins number of bins wanted
+     * @param per_bin  number of candidates in each bin
+     * @param window   acceptable total duration of a bin
+     * @return indices into the pool of the candidates in each filled bin, between 0 and num_bins bins
+     */
+    public static int[][] packBins(TrackPool pool, int num_bins, int per_bin, DurationWindow window) {
+        if (!pool.canFit(per_bin, window)) return new int[0][];
+
+        return packBins(pool.getDurations(), pool.getByDuration(), num_bins, per_bin, window);
+    }
+
+    /**
+     * Packs the bins for both packBins above
+     *
+     * @param durations_ms durations of the candidates
+     * @param by_duration  indices of the candidates in ascending duration
+     * @param num_bins     number of bins wanted
+     * @param per_bin      number of candidates in each bin
+     * @param window       acceptable total duration of a bin
+     * @return indices of the candidates in each filled bin, between 0 and num_bins bins
+     */
+    private static int[][] packBins(int[] durations_ms, int[] by_duration, int num_bins, int per_bin,
+                                    DurationWindow window) {
+
+        boolean[] used = new boolean[durations_ms.length];
+        List<int[]> bins = new ArrayList<>();
+        int num_remaining = durations_ms.length;
+
+        while (bins.size() < num_bins && num_remaining >= per_bin && per_bin > 0) {
+            int[] bin = packBin(durations_ms, by_duration, used, num_remaining, per_bin, window);
+            if (bin == null) break;
+
+            for (int index : bin) used[index] = true;
+            num_remaining -= per_bin;
+            bins.add(bin);
+        }
+
+        return bins.toArray(int[][]::new);
+    }
+
+    /**
+     * Fills a single bin for packBins
+     *
+     * @param durations_ms  durations of the candidates
+     * @param by_duration   indices of the candidates in ascending duration
+     * @param used          candidates already in a bin
+     * @param num_remaining number of candidates not in a bin yet
+     * @param per_bin       number of candidates in the bin
+     * @param window        acceptable total duration of the bin
+     * @return indices of the candidates in the bin, null if no bin fits
+     */
+    private static int[] packBin(int[] durations_ms, int[] by_duration, boolean[] used, int num_remaining,
+                                 int per_bin, DurationWindow window) {
+
+        for (int anchor : by_duration) {
+            if (used[anchor]) continue;
+
+            int anchor_ms = durations_ms[anchor];
+            // Every later anchor is at least as long, so none of them can fit either
+            if (anchor_ms > window.max_ms()) return null;
+
+            int[] rest = new int[num_remaining - 1];
+            int[] rest_durations_ms = new int[num_remaining - 1];
+            int count = 0;
+
+            for (int index : by_duration) {
+                if (used[index] || index == anchor) continue;
+
+                rest[count] = index;
+                rest_durations_ms[count++] = durations_ms[index];
+            }
+
+            DurationWindow rest_window = new DurationWindow(window.length_ms() - anchor_ms,
+                    window.min_ms() - anchor_ms, window.max_ms() - anchor_ms);
+
+            int[] picks = pickSubset(rest_durations_ms, per_bin - 1, rest_window);
+            if (picks == null) continue;
+
+            int[] bin = new int[per_bin];
+            bin[0] = anchor;
+            for (int pick = 0; pick < picks.length; pick++) bin[pick + 1] = rest[picks[pick]];
+
+            return bin;
+        }
+
+        return null;
+    }
+
+    /**
+     * Builds the k-subset-sum table as bitsets over totals in seconds: layers[i][j] has bit s set if some j of the
+     * first i candidates add up to s seconds. Totals past max_total_s are dropped, as durations only ever add up.
+     *
+     * @param durations_ms durations of the candidates
+     * @param k            number of candidates to pick
+     * @param max_total_s  largest total worth tracking
+     * @return the table, layers[candidates considered][candidates picked][word]
+     */
+    private static long[][][] buildSubsetLayers(int[] durations_ms, int k, int max_total_s) {
+        int num_words = (max_total_s >>> 6) + 1;
+        long[][][] layers = new long[durations_ms.length + 1][k + 1][];
+
+        layers[0][0] = new long[num_words];
+        layers[0][0][0] = 1L; // picking nothing adds up to 0
+        for (int picked = 1; picked <= k; picked++) layers[0][picked] = new long[num_words];
+
+        for (int candidate = 0; candidate < durations_ms.length; candidate++) {
+            int duration_s = toBucket(durations_ms[candidate]);
+            long[][] previous = layers[candidate];
+            long[][] next = new long[k + 1][];
+
+            next[0] = previous[0];
+            for (int picked = 1; picked <= k; picked++) {
+                next[picked] = previous[picked].clone();
+                orShifted(next[picked], previous[picked - 1], duration_s, max_total_s);
+            }
+
+            layers[candidate + 1] = next;
+        }
+
+        return layers;
+    }
+
+    /**
+     * Walks the table back from a total to find which candidates were picked to reach it
+     *
+     * @param layers       table built by buildSubsetLayers
+     * @param durations_ms durations of the candidates
+     * @param k            number of candidates to pick
+     * @param total_s      total to reach in seconds
+     * @return indices of the picked candidates in ascending order, null if no k candidates add up to total_s
+     */
+    private static int[] traceSubset(long[][][] layers, int[] durations_ms, int k, int total_s) {
+        if (!isSet(layers[durations_ms.length][k], total_s)) return null;
+
+        int[] picks = new int[k];
+        int picked = k;
+        int remaining_s = total_s;
+
+        for (int candidate = durations_ms.length; candidate > 0 && picked > 0; candidate--) {
+            // If the total was already reachable without this candidate, leave it out
+            if (isSet(layers[candidate - 1][picked], remaining_s)) continue;
+
+            picks[--picked] = candidate - 1;
+            remaining_s -= toBucket(durations_ms[candidate - 1]);
+        }
+
+        return picks;
+    }
+
+    /**
+     * destination |= source << shift, ignoring bits past max_bit
+     */
+    private static void orShifted(long[] destination, long[] source, int shift, int max_bit) {
+        int word_shift = shift >>> 6;
+        int bit_shift = shift & 63;
+
+        for (int word = destination.length - 1; word >= word_shift; word--) {
+            int from = word - word_shift;
+            long shifted = source[from] << bit_shift;
+
+            if (bit_shift != 0 && from > 0) shifted |= source[from - 1] >>> (64 - bit_shift);
+
+            destination[word] |= shifted;
+        }
+
+        int last_bits = (max_bit & 63) + 1;
+        if (last_bits < 64) destination[destination.length - 1] &= (1L << last_bits) - 1;
+    }
+
+    private static boolean isSet(long[] bits, int bit) {
+        return bit >= 0 && (bit >>> 6) < bits.length && (bits[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @param first  first value of the range (inclusive)
+     * @param last   last value of the range (inclusive)
+     * @param target value to be close to
+     * @return every value in the range, ordered by distance to the target
+     */
+    private static List<Integer> closestFirst(int first, int last, int target) {
+        List<Integer> values = new ArrayList<>();
+        for (int value = first; value <= last; value++) values.add(value);
+
+        values.sort(Comparator.comparingInt(value -> Math.abs(value - target)));
+
+        return values;
+    }
+
+    /**
+     * @param duration_ms duration in MilliSeconds
+     * @return duration rounded to the nearest bucket (second)
+     */
+    static int toBucket(int duration_ms) {
+        return (duration_ms + BUCKET_MS / 2) / BUCKET_MS;
+    }
+}
@@ -0,0 +1,32 @@
+package PlaylistGenerating.PlaylistTypes;
+
+/**
+ * An acceptable range of durations for a sequence of tracks (warmup, target, interval, etc.)
+ * <p>
+ * {@link #length_ms} length_ms:      desired length of the sequence in MilliSeconds<p>
+ * {@link #min_ms} min_ms:            shortest acceptable length of the sequence in MilliSeconds<p>
+ * {@link #max_ms} max_ms:            longest acceptable length of the sequence in MilliSeconds<p>
+ */
+public record DurationWindow(int length_ms, int min_ms, int max_ms) {
+
+    /**
+     * Creates a window around the provided length based on the provided margin of error
+     *
+     * @param length_ms       desired length in MilliSeconds
+     * @param margin_of_error percent the sequence can be off the desired length by and still be acceptable
+     * @return DurationWindow with its min and max set by the margin of error
+     */
+    public static DurationWindow of(int length_ms, float margin_of_error) {
+        return new DurationWindow(length_ms,
+                length_ms - (int) (length_ms * margin_of_error),
+                length_ms + (int) (length_ms * margin_of_error));
+    }
+
+    /**
+     * @param margin_of_error new margin of error
+     * @return a new window with the same length as this one but with the provided margin of error
+     */
+    public DurationWindow withMargin(float margin_of_error) {
+        return of(length_ms, margin_of_error);
+    }
+}
@@ -7,19 +7,22 @@ import ExceptionClasses.PersonalizationExceptions.GetUsersTopTracksRequestExcept
 import ExceptionClasses.ProfileExceptions.GetCurrentUsersProfileException;
 import PlaylistGenerating.EnergyRanges.EnergyRange;
 import PlaylistGenerating.HeartRateRanges.TargetHeartRateRange;
+import SpotifyUtilities.PersonalizationSnapshot;
 import SpotifyUtilities.PersonalizationUtilities;
 import SpotifyUtilities.RecommendationArguments;
+import com.neovisionaries.i18n.CountryCode;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.model_objects.specification.*;
 
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 
 import static PlaylistGenerating.EnergyRanges.DesiredEnergyRanges.getEnergyRange;
 import static PlaylistGenerating.HeartRateRanges.DesiredHeartRateRanges.getTargetHeartRateRange;
 import static PlaylistGenerating.PlaylistTypes.CommonUtilities.*;
-import static SpotifyUtilities.ArtistUtilities.getSeveralArtists;
 import static SpotifyUtilities.BrowsingUtilities.*;
 import static SpotifyUtilities.TrackUtilities.duration_comparator;
+import static SpotifyUtilities.TrackUtilities.isPlayable;
 import static SpotifyUtilities.UserProfileUtilities.getCurrentUsersProfile;
 
 abstract public class GeneratePlaylist {
@@ -42,7 +45,6 @@ abstract public class GeneratePlaylist {
     protected int seed_genres_provided = 0;
     protected int desired_num_seed_artists;
     protected int desired_num_seed_tracks;
-    protected int tracks_per_interval;
     protected String seed_artists;
     protected String seed_tracks;
     protected final int target_bpm;
@@ -52,6 +54,14 @@ abstract public class GeneratePlaylist {
 
     protected User user;
     protected final boolean is_personalized;
+    protected PersonalizationSnapshot personalization; // null unless is_personalized
+
+    // Margin of error used once the deadline has passed, wide enough that the closest fit is always accepted
+    private static final float best_effort_margin = 1f;
+    private static final int max_recommendations = 100; // most tracks one recommendation query can return
+    protected Deadline deadline = Deadline.never();
+    private volatile boolean is_best_effort = false; // Set by whichever phase settled for a fit past the deadline
+    private float quality = 1;
 
     public GeneratePlaylist(SpotifyApi spotify_api, String genres, int age, int workout_length, String intensity,
                             boolean is_personalized)
@@ -78,6 +88,10 @@ abstract public class GeneratePlaylist {
 
         determineSeedLimits();
 
+        if (is_personalized) {
+            personalization = PersonalizationUtilities.getPersonalizationSnapshot(spotify_api, user.getId());
+        }
+
         System.out.println("seed_genres_provided: " + seed_genres_provided);
         System.out.println("desired_num_seed_artists: " + desired_num_seed_artists);
         System.out.println("desired_num_seed_tracks: " + desired_num_seed_tracks);
@@ -91,6 +105,80 @@ abstract public class GeneratePlaylist {
 
     public abstract String generatePlaylist() throws Exception;
 
+    /**
+     * @param deadline point in time generatePlaylist should be finished by, the closest fit found so far is used for
+     *                 whatever is not done by then
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return how close the generated playlist's length is to the workout length, 1 is exact and 0 is off by the
+     * whole workout length or more
+     */
+    public float getQuality() {
+        return quality;
+    }
+
+    /**
+     * @return true if part of the playlist is only the closest fit found, because the deadline passed or a search ran
+     * out of budget before anything fit
+     */
+    public boolean isBestEffort() {
+        return is_best_effort;
+    }
+
+    /**
+     * Margin of error for the next attempt of a loop that relaxes its margin until something fits. Once the deadline
+     * has passed the margin is opened up so the closest fit is accepted and the loop ends.
+     *
+     * @param margin_of_error margin the loop would use next
+     * @return margin to use
+     */
+    protected float relaxMargin(float margin_of_error) {
+        if (!deadline.isExpired()) return Math.min(margin_of_error, best_effort_margin);
+
+        is_best_effort = true;
+        return best_effort_margin;
+    }
+
+    /**
+     * Whether a loop that relaxes its margin of error until something fits should try again. Once the margin is wide
+     * open (or was opened by relaxMargin because the deadline passed) nothing narrower will fit, so the loop has to
+     * settle for the closest fit it has, and calls markBestEffort if it does. This only answers the question, so loops
+     * may also ask it up front to know whether they are on their last try.
+     *
+     * @param margin_of_error margin the loop last tried
+     * @return true if a wider margin is left to try
+     */
+    protected boolean canRelax(float margin_of_error) {
+        return margin_of_error < best_effort_margin;
+    }
+
+    /**
+     * Records that part of the playlist is only the closest fit found, for the fallbacks that settle for one
+     */
+    protected void markBestEffort() {
+        is_best_effort = true;
+    }
+
+    /**
+     * Scores the final playlist (see getQuality)
+     *
+     * @param tracks tracks of the final playlist
+     */
+    protected void scorePlaylist(TrackSimplified[] tracks) {
+        long duration_ms = 0;
+
+        for (TrackSimplified track : tracks) duration_ms += track.getDurationMs();
+
+        float error = Math.abs(duration_ms - workout_len_ms) / (float) workout_len_ms;
+        quality = Math.max(0, 1 - error);
+
+        System.out.println("Quality: " + quality + (is_best_effort ? " (best effort)" : ""));
+    }
+
     protected int getTargetBPM() {
         TargetHeartRateRange targetHeartRateRange = getTargetHeartRateRange(this.age);
 
@@ -167,34 +255,46 @@ abstract public class GeneratePlaylist {
     }
 
     /**
-     * Calls the recommendation endpoint and sorts the returned response by duration in ascending order
+     * Finds recommendations (locally from tracks already seen when possible, see getIndexedRecommendations) and
+     * sorts them by duration in ascending order
      *
      * @param limit        number of songs to fetch
      * @param min_tempo    min tempo of songs to fetch
      * @param max_tempo    max tempo of songs to fetch
      * @param target_tempo target tempo of songs to fetch
-     * @return TrackSimplified array of sorted tracks which were fetched by the recommendation endpoint
+     * @return TrackSimplified array of sorted tracks which were found for the query
      * @throws GetRecommendationsException if an error occurs when fetching the recommendation
      */
     protected TrackSimplified[] getSortedRecommendations(int limit, float min_tempo, float max_tempo, float target_tempo, float energy)
             throws GetRecommendationsException {
 
-
-        TrackSimplified[] recommended_tracks = getUnsortedRecommendations(limit, min_tempo, max_tempo, target_tempo, energy);
-
-        if (recommended_tracks == null) return null;
-
-        Arrays.sort(recommended_tracks, duration_comparator);
-
-        return recommended_tracks;
+        return getSortedRecommendations(limit, min_tempo, max_tempo, target_tempo, energy - energy_offset,
+                energy + energy_offset, energy);
     }
 
+    /**
+     * Same as above, but with an explicit energy range (so callers can widen it along with the tempo range). The range
+     * is clamped to 0 - 1, anything past that makes the query invalid.
+     *
+     * @param limit        number of songs to fetch
+     * @param min_tempo    min tempo of songs to fetch
+     * @param max_tempo    max tempo of songs to fetch
+     * @param target_tempo target tempo of songs to fetch
+     * @param min_energy   min energy of songs to fetch
+     * @param max_energy   max energy of songs to fetch
+     * @param energy       target energy of songs to fetch
+     * @return TrackSimplified array of sorted tracks which were found for the query
+     * @throws GetRecommendationsException if an error occurs when fetching the recommendation
+     */
     protected TrackSimplified[] getSortedRecommendations(int limit, float min_tempo, float max_tempo,
                                                          float target_tempo, float min_energy, float max_energy,float energy)
             throws GetRecommendationsException {
 
-
-        TrackSimplified[] recommended_tracks = getUnsortedRecommendations(limit, min_tempo, max_tempo, target_tempo, energy);
+        TrackSimplified[] recommended_tracks = getPlayable(limit, query_limit ->
+                getIndexedRecommendations(new RecommendationArguments(
+                        spotify_api, query_limit, genres, seed_artists, seed_tracks,
+                        min_tempo, max_tempo, target_tempo, Math.max(0, min_energy), Math.min(1, max_energy), energy,
+                        user.getCountry())));
 
         if (recommended_tracks == null) return null;
 
@@ -220,16 +320,10 @@ abstract public class GeneratePlaylist {
 //        System.out.println("seed_artists: " + seed_artists);
 //        System.out.println("seed_tracks: " + seed_tracks);
 
-        RecommendationArguments current_arguments = new RecommendationArguments(
-                spotify_api, limit, genres, seed_artists, seed_tracks,
+        return getPlayable(limit, query_limit -> getRecommendations(new RecommendationArguments(
+                spotify_api, query_limit, genres, seed_artists, seed_tracks,
                 min_tempo, max_tempo, target_tempo, energy - energy_offset, energy + energy_offset,
-                energy, user.getCountry());
-
-        Recommendations recommendations;
-
-        recommendations = getRecommendations(current_arguments);
-
-        return recommendations.getTracks();
+                energy, user.getCountry())));
     }
 
     protected TrackSimplified[] getUnsortedRecommendations(int limit, float min_tempo, float max_tempo,
@@ -240,15 +334,9 @@ abstract public class GeneratePlaylist {
 //        System.out.println("seed_artists: " + seed_artists);
 //        System.out.println("seed_tracks: " + seed_tracks);
 
-        RecommendationArguments current_arguments = new RecommendationArguments(
-                spotify_api, limit, genres, seed_artists, seed_tracks,
-                min_tempo, max_tempo, target_tempo, min_energy, max_energy, energy, user.getCountry());
-
-        Recommendations recommendations;
-
-        recommendations = getRecommendations(current_arguments);
-
-        return recommendations.getTracks();
+        return getPlayable(limit, query_limit -> getRecommendations(new RecommendationArguments(
+                spotify_api, query_limit, genres, seed_artists, seed_tracks,
+                min_tempo, max_tempo, target_tempo, min_energy, max_energy, energy, user.getCountry())));
     }
 
     /**
@@ -266,14 +354,10 @@ abstract public class GeneratePlaylist {
             throws GetRecommendationsException {
 
         // Don't need seed artists and tracks as they will not be accessed so passing null is okay here
-        RecommendationArguments current_arguments = new RecommendationArguments(
-                spotify_api, limit, genres, null, null, min_tempo,
+        return getPlayable(limit, query_limit -> getGenreRecommendations(new RecommendationArguments(
+                spotify_api, query_limit, genres, null, null, min_tempo,
                 max_tempo, target_tempo, energy - energy_offset, energy + energy_offset,
-                energy, user.getCountry());
-
-        Recommendations recommendations = getGenreRecommendations(current_arguments);
-
-        return recommendations.getTracks();
+                energy, user.getCountry())));
     }
 
     /**
@@ -289,14 +373,11 @@ abstract public class GeneratePlaylist {
             throws GetRecommendationsException {
 
         // Target tempo will not be used, 0 is used as a placeholder
-        RecommendationArguments current_arguments = new RecommendationArguments(
-                spotify_api, limit, genres, seed_artists, seed_tracks,
-                min_tempo, max_tempo, 0, energy - energy_offset, energy + energy_offset,
-                energy, user.getCountry());
-
-        Recommendations recommendations = getRecommendationTempoRange(current_arguments);
-
-        TrackSimplified[] recommended_tracks = recommendations.getTracks();
+        TrackSimplified[] recommended_tracks = getPlayable(limit, query_limit ->
+                getRecommendationTempoRange(new RecommendationArguments(
+                        spotify_api, query_limit, genres, seed_artists, seed_tracks,
+                        min_tempo, max_tempo, 0, energy - energy_offset, energy + energy_offset,
+                        energy, user.getCountry())));
 
         Arrays.sort(recommended_tracks, duration_comparator);
 
@@ -304,12 +385,71 @@ abstract public class GeneratePlaylist {
     }
 
     /**
-     * Gets the users top track(s) and returns a comma seperated string of their IDS
+     * A recommendation query that can be made again asking for more tracks
+     */
+    @FunctionalInterface
+    private interface RecommendationQuery {
+        Recommendations fetch(int limit) throws GetRecommendationsException;
+    }
+
+    /**
+     * Makes the query and drops the tracks known not to be playable. If any were dropped the query is made once more
+     * asking for that many more tracks (up to Spotify's limit of 100), so callers still get up to limit tracks.
+     *
+     * @param limit number of tracks wanted
+     * @param query query to make
+     * @return up to limit tracks not known to be unplayable, null if Spotify returned none
+     * @throws GetRecommendationsException if an error occurs when fetching the recommendation
+     */
+    private TrackSimplified[] getPlayable(int limit, RecommendationQuery query) throws GetRecommendationsException {
+        TrackSimplified[] fetched = query.fetch(limit).getTracks();
+        TrackSimplified[] playable = withoutUnplayable(fetched);
+
+        if (playable == null || playable.length == fetched.length || limit >= max_recommendations) return playable;
+
+        TrackSimplified[] topped_up = withoutUnplayable(query.fetch(
+                Math.min(max_recommendations, limit + fetched.length - playable.length)).getTracks());
+        if (topped_up == null) return playable;
+
+        // Keep the tracks found first, then add new ones until there are limit
+        LinkedHashMap<String, TrackSimplified> merged = new LinkedHashMap<>();
+        for (TrackSimplified track : playable) merged.put(track.getId(), track);
+        for (TrackSimplified track : topped_up) {
+            if (merged.size() >= limit) break;
+            merged.putIfAbsent(track.getId(), track);
+        }
+
+        return merged.values().toArray(TrackSimplified[]::new);
+    }
+
+    /**
+     * Drops the tracks that are known not to be playable in the user's market (including ones recently seen as
+     * unplayable by any query, see UnplayableTracks), so they are never picked and then have to be replaced
+     *
+     * @param tracks candidate tracks, may be null
+     * @return the tracks not known to be unplayable, the same array if none are
+     */
+    private TrackSimplified[] withoutUnplayable(TrackSimplified[] tracks) {
+        if (tracks == null) return null;
+
+        CountryCode market = user.getCountry();
+
+        for (TrackSimplified track : tracks) {
+            if (!isPlayable(track, market)) {
+                return Arrays.stream(tracks).filter(candidate -> isPlayable(candidate, market))
+                        .toArray(TrackSimplified[]::new);
+            }
+        }
+
+        return tracks;
+    }
+
+    /**
+     * Picks the users top track(s) from their personalization snapshot and returns a comma seperated string of their IDS
      *
      * @return comma seperated string of IDs of the users top track(s)
-     * @throws GetUsersTopTracksRequestException if an error occurs fetching the users top tracks
      */
-    private String getSeedTracks() throws GetUsersTopTracksRequestException, GetSeveralArtistsException {
+    private String getSeedTracks() {
 
         if (desired_num_seed_tracks == 0) return "";
 
@@ -320,24 +460,23 @@ abstract public class GeneratePlaylist {
 
         // Splitting up the genres, so we can work with them easier, we will be checking against this list
         String[] selected_genres = genres.split(",");
+        removeGenreDashes(selected_genres); // Spotify's artist genres use spaces where the seed genres use dashes
 
-        Track[] top_tracks = PersonalizationUtilities.getUsersTopTracks(spotify_api);
+        Track[] top_tracks = personalization.top_tracks();
 
         for (Track track : top_tracks) {
 
             if (num_tracks_found == desired_num_seed_tracks) break;
 
-            // Can only check genre with an Artist object, so grab all the artists on the current track
+            // Tracks have no genres, so check the genres of the artists on the current track (kept in the snapshot)
             ArtistSimplified[] simplified_artists = track.getArtists();
             String[] ids = getArtistIDs(simplified_artists);
-            Artist[] artists = getSeveralArtists(spotify_api, ids);
 
 
             // If one of the artists on the track is described as being in a genre the user selected, add the track
-            for (Artist artist : artists) {
+            for (String id : ids) {
 
-                String[] artist_genres = artist.getGenres();
-                removeGenreDashes(selected_genres);
+                String[] artist_genres = personalization.getArtistGenres(id);
 
                 for (String genre : artist_genres) {
 
@@ -368,12 +507,11 @@ abstract public class GeneratePlaylist {
     }
 
     /**
-     * Gets the users top artist(s) and returns a comma seperated string of their IDS
+     * Picks the users top artist(s) from their personalization snapshot and returns a comma seperated string of their IDS
      *
      * @return comma seperated string of IDs of the users top artist(s)
-     * @throws GetUsersTopArtistsRequestException if an error occurs fetching the users top artists
      */
-    private String getSeedArtists() throws GetUsersTopArtistsRequestException {
+    private String getSeedArtists() {
 
         if (desired_num_seed_artists == 0) return "";
 
@@ -384,13 +522,13 @@ abstract public class GeneratePlaylist {
 
         // Splitting up the genres, so we can work with them easier, we will be checking against this list
         String[] selected_genres = genres.split(",");
+        removeGenreDashes(selected_genres); // Spotify's artist genres use spaces where the seed genres use dashes
 
-        Artist[] top_artists = PersonalizationUtilities.getUsersTopArtists(spotify_api);
+        Artist[] top_artists = personalization.top_artists();
 
         for (Artist artist : top_artists) {
 
             String[] artist_genres = artist.getGenres();
-            removeGenreDashes(selected_genres);
 
 
             for (String genre : artist_genres) {
@@ -0,0 +1,45 @@
+package PlaylistGenerating.PlaylistTypes;
+
+/**
+ * Immutable per-request values used while generating a playlist. Generators and checking utilities are handed a
+ * context rather than reading shared fields, so concurrent generations never see each other's duration windows.
+ * Relaxing a margin of error produces a new context instead of altering the current one, which shares the search
+ * budget of the context it was made from (so relaxing never refills it).
+ * <p>
+ * {@link #num_intervals} num_intervals:             number of intervals in the playlist (or warmup/wind-down)<p>
+ * {@link #tracks_per_interval} tracks_per_interval: number of tracks in each interval<p>
+ * {@link #target} target:                           acceptable duration of the target sequence<p>
+ * {@link #interval} interval:                       acceptable duration of a single interval, null if not used<p>
+ * {@link #transition} transition:                   acceptable duration of the warmup / wind-down, null if not used<p>
+ * {@link #search_budget} search_budget:             queries every widening search of the generation takes from<p>
+ */
+public record GenerationContext(int num_intervals, int tracks_per_interval, DurationWindow target,
+                                DurationWindow interval, DurationWindow transition, SearchBudget search_budget) {
+
+    /**
+     * @param margin_of_error margin of error for the target sequence
+     * @return a copy of this context with the target window set by the provided margin of error
+     */
+    public GenerationContext withTargetMargin(float margin_of_error) {
+        return new GenerationContext(num_intervals, tracks_per_interval, target.withMargin(margin_of_error),
+                interval, transition, search_budget);
+    }
+
+    /**
+     * @param margin_of_error margin of error for each interval
+     * @return a copy of this context with the interval window set by the provided margin of error
+     */
+    public GenerationContext withIntervalMargin(float margin_of_error) {
+        return new GenerationContext(num_intervals, tracks_per_interval, target,
+                interval.withMargin(margin_of_error), transition, search_budget);
+    }
+
+    /**
+     * @param margin_of_error margin of error for the warmup / wind-down sequences
+     * @return a copy of this context with the transition window set by the provided margin of error
+     */
+    public GenerationContext withTransitionMargin(float margin_of_error) {
+        return new GenerationContext(num_intervals, tracks_per_interval, target, interval,
+                transition.withMargin(margin_of_error), search_budget);
+    }
+}
@@ -5,33 +5,31 @@ import ExceptionClasses.BrowsingExceptions.GetRecommendationsException;
 import ExceptionClasses.PersonalizationExceptions.GetUsersTopArtistsRequestException;
 import ExceptionClasses.PersonalizationExceptions.GetUsersTopTracksRequestException;
 import ExceptionClasses.ProfileExceptions.GetCurrentUsersProfileException;
+import PlaylistGenerating.PlaylistTypes.DurationSolver;
+import PlaylistGenerating.PlaylistTypes.DurationWindow;
 import PlaylistGenerating.PlaylistTypes.GeneratePlaylist;
+import PlaylistGenerating.PlaylistTypes.GenerationContext;
+import PlaylistGenerating.PlaylistTypes.TrackPool;
+import PlaylistGenerating.PlaylistTypes.WideningSearch;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
 
 import java.util.*;
 
-import static PlaylistGenerating.PlaylistTypes.CommonUtilities.addAll;
 import static SpotifyUtilities.TrackUtilities.duration_comparator;
 
 public class GenerateInterval extends GeneratePlaylist {
 
-    protected static int num_tracks = 0;
-    protected static int target_length_ms = 0;
-    protected static int min_target_len_ms;
-    protected static int max_target_len_ms;
-    protected static int interval_len_ms = 0;
-    protected static int min_interval_len_ms;
-    protected static int max_interval_len_ms;
-    protected static int tracks_per_interval = 0;
-    protected static int num_slow_intervals = 0;
-    protected static int num_fast_intervals = 0;
-    protected static int og_offset = 3;
-    protected static int num_slow_tracks;
-    protected static int num_fast_tracks;
-    protected static int num_levels = -1;
-
-    protected static int query_limit;
+    protected static final int og_offset = 3;
+    protected final GenerationContext context; // target window is the whole workout, interval window is one interval
+    protected final int num_tracks;
+    protected final int num_slow_intervals;
+    protected final int num_fast_intervals;
+    protected final int num_slow_tracks;
+    protected final int num_fast_tracks;
+    protected final int num_levels;
+
+    protected final int query_limit;
 
     /**
      * Constructor for generating a classic style playlist
@@ -54,18 +52,16 @@ public class GenerateInterval extends GeneratePlaylist {
         num_slow_intervals = (num_intervals / 2) + 1; // We want to start and end with a slow interval
         num_fast_intervals = num_intervals - num_slow_intervals; // Will always be odd if workout len >= 21
 
-        tracks_per_interval = getTracksPerInterval();
+        int tracks_per_interval = getTracksPerInterval();
         num_slow_tracks = num_slow_intervals * tracks_per_interval;
         num_fast_tracks = num_fast_intervals * tracks_per_interval;
 
         num_tracks = num_slow_tracks + num_fast_tracks;
 
-
-        target_length_ms = workout_len_ms;
-        setTargetLengths(margin_of_error);
-
-        interval_len_ms = target_length_ms / num_intervals;
-        setIntervalLengths(margin_of_error);
+        context = new GenerationContext(num_intervals, tracks_per_interval,
+                DurationWindow.of(workout_len_ms, margin_of_error),
+                DurationWindow.of(workout_len_ms / num_intervals, margin_of_error), null,
+                WideningSearch.newGenerationBudget());
 
         num_levels = num_fast_intervals / 2 + 1;
 
@@ -126,59 +122,8 @@ public class GenerateInterval extends GeneratePlaylist {
     }
 
     /**
-     * Sets the min and max Target lengths based on the provided margin of error
-     *
-     * @param margin_of_error margin of error used in setting the min and max target lengths
-     */
-    private void setTargetLengths(float margin_of_error) {
-        // MilliSeconds of length that is acceptable for the target sequence based on our MOE
-        min_target_len_ms = target_length_ms - (int) (target_length_ms * margin_of_error);
-        max_target_len_ms = target_length_ms + (int) (target_length_ms * margin_of_error);
-    }
-
-    /**
-     * Sets the min and max Interval lengths based on the provided margin of error
-     *
-     * @param margin_of_error margin of error used in setting the min and max interval lengths
-     */
-    void setIntervalLengths(float margin_of_error) {
-        // Milliseconds of length that is acceptable for the target sequence based on our MOE
-        min_interval_len_ms = interval_len_ms - (int) (interval_len_ms * margin_of_error);
-        max_interval_len_ms = interval_len_ms + (int) (interval_len_ms * margin_of_error);
-    }
-
-    /**
-     * Checks if the track array provided is within the allowable duration range
-     * SPECIFICALLY FOR INTERVAL SEQUENCES ONLY
-     *
-     * @param tracks tracks to be checked for their duration
-     * @return appropriately named enum (TOO_SHORT if too short, TOO_LONG if too long, and ACCEPTABLE if acceptable)
-     */
-    protected static DURATION_RESULT checkIntervalDuration(Deque<TrackSimplified> tracks) {
-        int duration_ms = 0;
-
-        for (TrackSimplified track : tracks) {
-            duration_ms += track.getDurationMs();
-        }
-
-//        System.out.println("Duration: " + duration_ms);
-//        System.out.println("Interval Duration: " + interval_len_ms);
-//        System.out.println("Min Duration: " + min_interval_len_ms);
-//        System.out.println("Max Duration: " + max_interval_len_ms);
-//        System.out.println();
-
-
-        if (duration_ms < min_interval_len_ms) {
-            return DURATION_RESULT.TOO_SHORT;
-        } else if (duration_ms > max_interval_len_ms) {
-            return DURATION_RESULT.TOO_LONG;
-        } else {
-            return DURATION_RESULT.ACCEPTABLE;
-        }
-    }
-
-    /**
-     * Queries the Spotify recommendation endpoint with protections to ensure the correct number of tracks are returned
+     * Queries the Spotify recommendation endpoint, widening the bpm range until the limit is met. If the search runs
+     * out of budget fewer tracks are returned, which findRoughIntervals and fillIntervals settle for on their last try
      *
      * @param min_bpm    minimum bpm for recommendation endpoint query
      * @param max_bpm    maximum bpm for recommendation endpoint query
@@ -189,85 +134,21 @@ public class GenerateInterval extends GeneratePlaylist {
     TrackSimplified[] getRecommendedTracks(int limit, int min_bpm, int max_bpm, int target_bpm, float energy)
             throws GetRecommendationsException {
 
-        TrackSimplified[] recommended_tracks;
-        int local_offset = 0;
-        HashSet<TrackSimplified> track_set = new HashSet<>();
-
-        do {
-
-            recommended_tracks = getUnsortedRecommendations(limit, min_bpm - local_offset,
-                    max_bpm + local_offset, target_bpm, energy);
-
-
-            // Hash set can take the null element which we want to avoid
-            if (recommended_tracks != null) {
-                track_set.addAll(List.of(recommended_tracks));
-
-                // If the limit has been met
-                if (track_set.size() >= limit) {
-
-                    System.out.println("Track Set Size: " + track_set.size());
+        // Loosen bpm/tempo restrictions until the limit has been met
+        TrackSimplified[] track_array = WideningSearch.search(local_offset -> getUniqueRecommendations(limit,
+                        min_bpm - local_offset, max_bpm + local_offset, target_bpm, energy),
+                tracks -> tracks.length >= limit, 0, deadline, context.search_budget());
 
+        System.out.println("Track Set Size: " + track_array.length);
 
-                    TrackSimplified[] track_array = track_set.toArray(TrackSimplified[]::new);
-                    Arrays.sort(track_array, duration_comparator); // Sort the tracks in ascending duration
-
-                    return track_array;
-                }
-            }
-
-            local_offset++; // Loosen bpm/tempo restrictions
-
-        } while (true);
-
-    }
-
-    /**
-     * Gets tracks for a single interval
-     *
-     * @param tracks - tracks to be used for the interval
-     * @return - tracks for the interval
-     */
-    protected TrackSimplified[] getIntervalTracks(TrackSimplified[] tracks) {
-
-        Deque<TrackSimplified> deque = new ArrayDeque<>();
-
-        int index = 0;
-        DURATION_RESULT result;
-        TrackSimplified current_track;
-
-        // Get the first batch of songs into the deque
-        for (; index < tracks_per_interval; index++) {
-            current_track = tracks[index];
-            deque.add(current_track);
-        }
-
-        result = checkIntervalDuration(deque);
-
-        if (result == DURATION_RESULT.ACCEPTABLE) return deque.toArray(TrackSimplified[]::new);
-        // If the shortest combination of tracks is too long there is no suitable combination so return null
-        if (result == DURATION_RESULT.TOO_LONG) return null;
-
-        for (; index < tracks.length; index++) {
-
-            current_track = tracks[index];
-
-            // This essentially shifts the group of tracks we are analyzing to the right (longer) side
-            deque.removeFirst(); // remove the shortest track
-            deque.add(current_track); // add the next track in line
-
-            result = checkIntervalDuration(deque);
-
-            if (result == DURATION_RESULT.ACCEPTABLE) return deque.toArray(TrackSimplified[]::new);
-
-            if (result == DURATION_RESULT.TOO_LONG) return null; // If now too long there is no acceptable combination
-        }
+        Arrays.sort(track_array, duration_comparator); // Sort the tracks in ascending duration
 
-        return null;
+        return track_array;
     }
 
     /**
-     * Finds tracks for a given bpm, returns the provided limit number of tracks
+     * Finds tracks for a given bpm, returns the provided limit number of tracks (fewer if the widening search runs
+     * out of budget, see above)
      *
      * @param query_bpm BPM to query the Spotify recommendations endpoint with
      * @param limit     how many tracks to return (MAX 100)
@@ -276,37 +157,13 @@ public class GenerateInterval extends GeneratePlaylist {
     protected ArrayList<TrackSimplified> getRecommendedTracks(int query_bpm, int limit, float energy)
             throws GetRecommendationsException {
 
-        int local_offset = og_offset; // Was og_offset (3) for a while
-        // 100 is the max for recommendation endpoint
-        HashSet<TrackSimplified> track_set = new HashSet<>();
-
-        do {
+        // 100 is the max for recommendation endpoint. Loosen bpm/tempo restrictions until the limit has been met
+        TrackSimplified[] track_array = WideningSearch.search(local_offset -> getUniqueRecommendations(limit,
+                        query_bpm - local_offset, query_bpm + local_offset, query_bpm, energy),
+                tracks -> tracks.length >= limit, og_offset, deadline, context.search_budget());
 
-            TrackSimplified[] recommended_tracks;
-
-            // We use the unsorted version as they will all be thrown in a hashset anyway, so we will sort later on
-            recommended_tracks = getUnsortedRecommendations(limit,
-                    query_bpm - local_offset, query_bpm + local_offset, query_bpm, energy);
-
-            // Hash set can take the null element which we want to avoid, also want to avoid adding process if empty
-            if (recommended_tracks != null && recommended_tracks.length != 0) {
-                track_set.addAll(List.of(recommended_tracks));
-            }
+        System.out.println("Track Set Size: " + track_array.length);
 
-            // If the limit has been met
-            if (track_set.size() >= limit) {
-                break;
-            }
-
-            local_offset++; // Loosen bpm/tempo restrictions
-            System.out.println(local_offset);
-
-        } while (true);
-
-        System.out.println("Track Set Size: " + track_set.size());
-
-
-        TrackSimplified[] track_array = track_set.toArray(TrackSimplified[]::new);
         Arrays.sort(track_array, duration_comparator); // Sort the tracks in ascending duration
 
         return new ArrayList<>(Arrays.asList(track_array));
@@ -314,139 +171,165 @@ public class GenerateInterval extends GeneratePlaylist {
     }
 
     /**
-     * Finds the best sequence of songs that fit within the target duration window
-     * Grabs the first batch of songs from the beginning of the tracks array and shifts the selected group
-     * of songs to the right until a song is found, or we reach a point where it is clear no grouping is acceptable
+     * Queries the Spotify recommendation endpoint, dropping any track returned more than once
      *
-     * @return TrackSimplified array of songs that fit in the target duration window, null otherwise
+     * @param limit      how many tracks to ask for
+     * @param min_bpm    minimum bpm for recommendation endpoint query
+     * @param max_bpm    maximum bpm for recommendation endpoint query
+     * @param target_bpm target bpm for recommendation endpoint query
+     * @param energy     target energy for recommendation endpoint query
+     * @return TrackSimplified array of the distinct tracks returned, empty if none were
+     * @throws GetRecommendationsException If an error was encountered in the recommendation endpoint
      */
-    protected ArrayList<TrackSimplified> findRoughIntervals(ArrayList<TrackSimplified> track_pool, int intervals_to_fill) {
-
-        // track_pool should have 100 song
-        Deque<TrackSimplified> deque = new ArrayDeque<>();
-        ArrayList<TrackSimplified> selected_tracks = new ArrayList<>();
-        TrackSimplified current_track;
-        DURATION_RESULT result;
-        float acceptable_percent_filled = .75f;
-
-        int index = 0;
-
-        // Get the first batch of songs into the deque
-        for (; index < tracks_per_interval; index++) {
+    private TrackSimplified[] getUniqueRecommendations(int limit, int min_bpm, int max_bpm, int target_bpm,
+                                                      float energy) throws GetRecommendationsException {
 
-            current_track = track_pool.get(index);
+        // We use the unsorted version as they will all be thrown in a hashset anyway, so we will sort later on
+        TrackSimplified[] recommended_tracks = getUnsortedRecommendations(limit, min_bpm, max_bpm, target_bpm, energy);
 
-            deque.add(current_track);
-        }
-
-        int intervals_filled = 0;
-
-        // Pick up where we left off
-        for (; index < track_pool.size(); index++) {
-
-            result = checkIntervalDuration(deque);
+        // Hash set can take the null element which we want to avoid
+        if (recommended_tracks == null) return new TrackSimplified[0];
 
-            if (result == DURATION_RESULT.ACCEPTABLE) {
-
-                int deque_size = deque.size(); // Store size here as in the loop size, will be altered by .pop()
-
-                // Empty the deque, add tracks to the selected tracks, remove songs from track pool
-                for (int i = 0; i < deque_size; i++) {
-                    current_track = deque.pop();
-
-                    selected_tracks.add(current_track); // Place it in our collection of selected tracks
-                    track_pool.remove(current_track); // Removing to avoid having these added later as dupes
-                }
-
-                intervals_filled++;
-
-                // If we have filled all intervals break out of this loop
-                if (intervals_filled == intervals_to_fill) break;
-
-                index = 0; // restart index at 0 since we altered the track pool and can consider new combinations
-
-                // Refill the deque
-                for (; index < tracks_per_interval; index++) {
-                    current_track = track_pool.get(index);
-                    deque.add(current_track);
-                }
+        return new LinkedHashSet<>(List.of(recommended_tracks)).toArray(TrackSimplified[]::new);
+    }
 
-            }
-            // If the combination is too long there are no combinations remaining that will fit into our intervals
-            else if (result == DURATION_RESULT.TOO_LONG) {
-                break;
-            } else {
+    /**
+     * Packs as many intervals as possible out of the track pool, each interval fitting the interval window. The
+     * selected tracks are removed from the pool.
+     *
+     * @param track_pool        tracks to pull intervals from
+     * @param intervals_to_fill number of intervals we want to fill
+     * @param local_context     context holding the current interval window
+     * @param is_last_try       true if the margin can not be relaxed any further, so however many intervals were
+     *                          filled are accepted (fillIntervals settles for the closest fit for the rest)
+     * @return tracks of the filled intervals one interval after another, null if fewer than 75% of the intervals were
+     * filled and this is not the last try
+     */
+    protected ArrayList<TrackSimplified> findRoughIntervals(ArrayList<TrackSimplified> track_pool, int intervals_to_fill,
+                                                            GenerationContext local_context, boolean is_last_try) {
 
-                // If duration was not acceptable shift tracks over to find better length
-                current_track = track_pool.get(index);
+        float acceptable_percent_filled = .75f;
 
-                // This essentially shifts the group of tracks we are analyzing to the right (longer) side
-                deque.removeFirst(); // remove the shortest track
-                deque.add(current_track); // add the next track in line
-            }
-        }
+        TrackPool pool = TrackPool.of(track_pool);
+        int[][] intervals = DurationSolver.packBins(pool, intervals_to_fill, local_context.tracks_per_interval(),
+                local_context.interval());
 
         // If we did not fill enough of the intervals return null, so we can try again with looser margins
-        float percent_filled = ((float) intervals_filled / intervals_to_fill) * 100;
-        System.out.println("Percent Filled: " + percent_filled + "%");
+        float percent_filled = (float) intervals.length / intervals_to_fill;
+        System.out.println("Percent Filled: " + percent_filled * 100 + "%");
 
-        if (percent_filled < acceptable_percent_filled) return null;
+        if (percent_filled < acceptable_percent_filled && !is_last_try) return null;
 
-        return selected_tracks;
+        return takeIntervals(track_pool, pool, intervals);
     }
 
     /**
-     * Takes the given tracks ArrayList and adds the correct number of tracks to it
+     * Takes the given tracks ArrayList and adds the correct number of tracks to it. Each batch of recommendations is
+     * packed into as many of the missing intervals as it can fill, so usually a single request is enough. If the margin
+     * is wide open and intervals are still missing (too few new tracks came back) the closest fitting tracks that are
+     * left are used instead, so this always returns.
      *
      * @param tracks              ArrayList of tracks to add to
      * @param query_bpm           bpm to find tracks to fill the intervals with
      * @param total_tracks_needed TOTAL number of tracks needed for the ENTIRE interval range
      *                            (often num_fast_intervals or num_slow_intervals)
-     * @return ArrayList of tracks with the correct number of tracks added
+     * @param local_context       context holding the interval window to start from
+     * @return ArrayList of tracks with the correct number of tracks added, fewer only if too few tracks were found
      * @throws GetRecommendationsException if there is an error getting recommendations
      */
     protected ArrayList<TrackSimplified> fillIntervals(ArrayList<TrackSimplified> tracks, int total_tracks_needed,
-                                                       int query_bpm, float energy) throws GetRecommendationsException {
-
-        TrackSimplified[] recommended_tracks;
-        TrackSimplified[] tracks_to_add;
-        int num_tracks_needed;
+                                                       int query_bpm, float energy, GenerationContext local_context)
+            throws GetRecommendationsException {
 
-        float local_moe; // Keeps track of moe for duration purposes which we will be altering here
+        int tracks_per_interval = local_context.tracks_per_interval();
+        float local_moe = margin_of_error; // Keeps track of moe for duration purposes which we will be altering here
+        GenerationContext fill_context = local_context;
         int limit = 21;
         int local_offset = og_offset;
 
-        // Find how many tracks we need to find
-        num_tracks_needed = total_tracks_needed - tracks.size();
+        // Find how many intervals we need to find, a partly filled interval counts as a whole one
+        int intervals_needed = (total_tracks_needed - tracks.size() + tracks_per_interval - 1) / tracks_per_interval;
+
+        System.out.println("Intervals Needed: " + intervals_needed);
 
-        System.out.println("Tracks Needed: " + num_tracks_needed);
+        HashSet<String> track_ids = new HashSet<>();
+        for (TrackSimplified track : tracks) track_ids.add(track.getId());
 
-        for (int i = 0; i < num_tracks_needed; i++) {
+        ArrayList<TrackSimplified> recommended_tracks = new ArrayList<>();
 
-            local_moe = margin_of_error;
+        while (intervals_needed > 0) {
 
-            do {
+            recommended_tracks = new ArrayList<>(List.of(getRecommendedTracks(limit,
+                    query_bpm - local_offset, query_bpm + local_offset, query_bpm, energy)));
+            recommended_tracks.removeIf(track -> track_ids.contains(track.getId())); // Avoid adding dupes
 
-                recommended_tracks = getRecommendedTracks(limit, query_bpm - local_offset,
-                        query_bpm + local_offset, query_bpm, energy);
+            TrackPool pool = TrackPool.of(recommended_tracks);
+            int[][] intervals = DurationSolver.packBins(pool, intervals_needed, tracks_per_interval,
+                    fill_context.interval());
 
-                tracks_to_add = getIntervalTracks(recommended_tracks);
+            // add the new tracks to the track list
+            for (TrackSimplified track : takeIntervals(recommended_tracks, pool, intervals)) {
+                tracks.add(track);
+                track_ids.add(track.getId());
+            }
+            intervals_needed -= intervals.length;
 
-                local_offset ++;
-                setIntervalLengths(local_moe += .005);
+            if (intervals_needed > 0 && !canRelax(local_moe)) break;
 
-            } while (tracks_to_add == null);
+            local_offset++;
+            local_moe = relaxMargin(local_moe + .005f);
+            fill_context = context.withIntervalMargin(local_moe);
+        }
 
-            setIntervalLengths(margin_of_error); // restore moe
-            tracks = addAll(tracks, tracks_to_add); // add the new tracks to the track list
+        // Nothing fits even with the margin wide open, settle for the closest intervals the last tracks make
+        if (intervals_needed > 0) markBestEffort();
 
+        for (; intervals_needed > 0 && !recommended_tracks.isEmpty(); intervals_needed--) {
+            TrackPool pool = TrackPool.of(recommended_tracks);
+            int num_picks = Math.min(tracks_per_interval, pool.size());
+            int[] picks = DurationSolver.pickClosestSubset(pool.getDurations(), num_picks,
+                    context.interval().length_ms());
+
+            tracks.addAll(takeIntervals(recommended_tracks, pool, new int[][]{picks}));
         }
 
         return tracks;
     }
 
     /**
-     * Orders the slow and fast tracks into the correct ordering desired for the final playlist
+     * Removes the tracks of the provided intervals from the track pool
+     *
+     * @param track_pool tracks the intervals were packed from
+     * @param pool       the same tracks as a TrackPool, which the intervals index into
+     * @param intervals  indices into pool of each interval's tracks
+     * @return tracks of the intervals one interval after another
+     */
+    private static ArrayList<TrackSimplified> takeIntervals(ArrayList<TrackSimplified> track_pool, TrackPool pool,
+                                                            int[][] intervals) {
+
+        ArrayList<TrackSimplified> selected_tracks = new ArrayList<>();
+        boolean[] selected = new boolean[pool.size()];
+
+        for (int[] interval : intervals) {
+            selected_tracks.addAll(List.of(pool.getTracks(interval)));
+            for (int index : interval) selected[index] = true;
+        }
+
+        // Removing to avoid having these added later as dupes
+        ArrayList<TrackSimplified> remaining_tracks = new ArrayList<>();
+        for (int index = 0; index < selected.length; index++) {
+            if (!selected[index]) remaining_tracks.add(pool.getTrack(index));
+        }
+
+        track_pool.clear();
+        track_pool.addAll(remaining_tracks);
+
+        return selected_tracks;
+    }
+
+    /**
+     * Orders the slow and fast tracks into the correct ordering desired for the final playlist. If a best effort fill
+     * came up short the other kind of track stands in, and if both run out the playlist is shorter.
      *
      * @param slow_tracks tracks in the slow interval
      * @param fast_tracks tracks in the fast interval
@@ -462,7 +345,7 @@ public class GenerateInterval extends GeneratePlaylist {
         for (int index = 0; index < num_tracks; index++) {
 
             // If we have added enough tracks for the current interval, ignore first check when index is 0
-            if (index % tracks_per_interval == 0 && index != 0) {
+            if (index % context.tracks_per_interval() == 0 && index != 0) {
 
                 if (is_slow_interval) {
                     current_tracks = fast_tracks;
@@ -474,8 +357,14 @@ public class GenerateInterval extends GeneratePlaylist {
                 is_slow_interval = !is_slow_interval;
             }
 
+            ArrayList<TrackSimplified> other_tracks = current_tracks == slow_tracks ? fast_tracks : slow_tracks;
+
+            if (current_tracks.isEmpty() && other_tracks.isEmpty()) {
+                return Arrays.copyOf(ordered_playlist, index);
+            }
+
             // Removing index zero will slide all elements to the left refilling index zero until there are no elements
-            ordered_playlist[index] = current_tracks.remove(0);
+            ordered_playlist[index] = (current_tracks.isEmpty() ? other_tracks : current_tracks).remove(0);
 
         }
 
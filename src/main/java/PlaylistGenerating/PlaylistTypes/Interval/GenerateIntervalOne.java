@@ -5,7 +5,7 @@ import ExceptionClasses.BrowsingExceptions.GetRecommendationsException;
 import ExceptionClasses.PersonalizationExceptions.GetUsersTopArtistsRequestException;
 import ExceptionClasses.PersonalizationExceptions.GetUsersTopTracksRequestException;
 import ExceptionClasses.ProfileExceptions.GetCurrentUsersProfileException;
-import ExceptionClasses.TrackExceptions.GetAudioFeaturesForTrackException;
+import PlaylistGenerating.PlaylistTypes.GenerationContext;
 import SpotifyUtilities.PlaylistUtilities;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.model_objects.specification.*;
@@ -14,7 +14,6 @@ import java.util.*;
 
 import static PlaylistGenerating.PlaylistTypes.CommonUtilities.*;
 import static SpotifyUtilities.PlaylistUtilities.createPlaylist;
-import static SpotifyUtilities.UserProfileUtilities.getCurrentUsersProfile;
 
 /**
  * This class is used to generate a playlist for an interval style workout
@@ -42,13 +41,12 @@ public class GenerateIntervalOne extends GenerateInterval {
 
         System.out.println("Generating Interval One Playlist");
 
-        User user = getCurrentUsersProfile(spotify_api);
-
         // Build playlist (get & organize tracks)
         TrackSimplified[] final_playlist_tracks = buildPlaylist();
 
         eliminateDupesAndNonPlayable(spotify_api, final_playlist_tracks, genres,
                 seed_artists, seed_tracks, user.getCountry());
+        scorePlaylist(final_playlist_tracks);
 
         // Create a playlist on the user's account
         Playlist playlist = createPlaylist(spotify_api, user.getId(), user.getDisplayName());
@@ -67,7 +65,7 @@ public class GenerateIntervalOne extends GenerateInterval {
      *
      * @return the final array of track IDS
      */
-    private TrackSimplified[] buildPlaylist() throws GetRecommendationsException, GetAudioFeaturesForTrackException {
+    private TrackSimplified[] buildPlaylist() throws GetRecommendationsException {
 
         ArrayList<TrackSimplified> recommended_slow_tracks;
         ArrayList<TrackSimplified> slow_intervals;
@@ -79,9 +77,12 @@ public class GenerateIntervalOne extends GenerateInterval {
 
         // Keeps track of moe for duration purposes which we will be altering here
         float local_moe = margin_of_error;
+        GenerationContext local_context = context;
 
         do {
 
+            boolean is_last_try = !canRelax(local_moe);
+
             //System.out.println("Getting Recommended Tracks");
             // Get recommended tracks
             recommended_slow_tracks = getRecommendedTracks(resting_bpm, query_limit, starting_energy);
@@ -89,28 +90,29 @@ public class GenerateIntervalOne extends GenerateInterval {
 
             //System.out.println("Finding Rough Intervals");
             // Fill the intervals the best we can with the given 100 tracks
-            slow_intervals = findRoughIntervals(recommended_slow_tracks, num_slow_intervals);
-            fast_intervals = findRoughIntervals(recommended_fast_tracks, num_fast_intervals);
+            slow_intervals = findRoughIntervals(recommended_slow_tracks, num_slow_intervals, local_context, is_last_try);
+            fast_intervals = findRoughIntervals(recommended_fast_tracks, num_fast_intervals, local_context, is_last_try);
 
             // If enough of the intervals have been found, fill the gaps and sort them into one correctly ordered array
             if(slow_intervals != null && fast_intervals != null){
 
                 //System.out.println("Filling Intervals");
                 // Find a good ordering of each interval
-                slow_intervals = fillIntervals(slow_intervals, num_slow_tracks, resting_bpm, starting_energy);
-                fast_intervals = fillIntervals(fast_intervals, num_fast_tracks, resting_bpm, target_energy);
+                slow_intervals = fillIntervals(slow_intervals, num_slow_tracks, resting_bpm, starting_energy,
+                        local_context);
+                fast_intervals = fillIntervals(fast_intervals, num_fast_tracks, resting_bpm, target_energy,
+                        local_context);
 
                 //System.out.println("Ordering Tracks");
                 // Order the tracks correctly
                 final_playlist = orderTracks(slow_intervals, fast_intervals);
             }
 
-            setIntervalLengths(local_moe += .01); // loosen MOE
+            local_moe = relaxMargin(local_moe + .01f); // loosen MOE
+            local_context = context.withIntervalMargin(local_moe);
 
         } while (final_playlist == null);
 
-        setIntervalLengths(margin_of_error); // restore moe
-
         return final_playlist;
     }
 }
\ No newline at end of file
@@ -5,18 +5,16 @@ import ExceptionClasses.BrowsingExceptions.GetRecommendationsException;
 import ExceptionClasses.PersonalizationExceptions.GetUsersTopArtistsRequestException;
 import ExceptionClasses.PersonalizationExceptions.GetUsersTopTracksRequestException;
 import ExceptionClasses.ProfileExceptions.GetCurrentUsersProfileException;
-import ExceptionClasses.TrackExceptions.GetAudioFeaturesForTrackException;
+import PlaylistGenerating.PlaylistTypes.GenerationContext;
 import SpotifyUtilities.PlaylistUtilities;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.model_objects.specification.Playlist;
 import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
-import se.michaelthelin.spotify.model_objects.specification.User;
 
 import java.util.*;
 
 import static PlaylistGenerating.PlaylistTypes.CommonUtilities.*;
 import static SpotifyUtilities.PlaylistUtilities.createPlaylist;
-import static SpotifyUtilities.UserProfileUtilities.getCurrentUsersProfile;
 
 public class GenerateIntervalTwo extends GenerateInterval {
 
@@ -41,13 +39,12 @@ public class GenerateIntervalTwo extends GenerateInterval {
 
         System.out.println("Generating Interval Two Playlist");
 
-        User user = getCurrentUsersProfile(spotify_api);
-
         // Build playlist (get & organize tracks)
         TrackSimplified[] final_playlist_tracks = buildPlaylist();
 
         eliminateDupesAndNonPlayable(spotify_api, final_playlist_tracks, genres,
                 seed_artists, seed_tracks, user.getCountry());
+        scorePlaylist(final_playlist_tracks);
 
         // Create a playlist on the user's account
         Playlist playlist = createPlaylist(spotify_api, user.getId(), user.getDisplayName());
@@ -66,7 +63,7 @@ public class GenerateIntervalTwo extends GenerateInterval {
      *
      * @return the final array of track IDS
      */
-    private TrackSimplified[] buildPlaylist() throws GetRecommendationsException, GetAudioFeaturesForTrackException {
+    private TrackSimplified[] buildPlaylist() throws GetRecommendationsException {
 
         ArrayList<TrackSimplified> recommended_slow_tracks;
         ArrayList<TrackSimplified> slow_intervals;
@@ -77,9 +74,12 @@ public class GenerateIntervalTwo extends GenerateInterval {
 
         // Keeps track of moe for duration purposes which we will be altering here
         float local_moe = margin_of_error;
+        GenerationContext local_context = context;
 
         do {
 
+            boolean is_last_try = !canRelax(local_moe);
+
             //TODO: consider reducing limit for closer tempo matches
             //System.out.println("Getting Recommended Tracks");
             // Get recommended tracks for the slow interval
@@ -87,7 +87,7 @@ public class GenerateIntervalTwo extends GenerateInterval {
 
             //System.out.println("Finding Slow Intervals");
             // Fill the intervals the best we can with the given 100 tracks
-            slow_intervals = findRoughIntervals(recommended_slow_tracks, num_slow_intervals);
+            slow_intervals = findRoughIntervals(recommended_slow_tracks, num_slow_intervals, local_context, is_last_try);
 
             //System.out.println("Finding Fast Intervals");
             fast_intervals = findFastIntervals(); // Finding the fast intervals is much different than finding the slow
@@ -97,18 +97,18 @@ public class GenerateIntervalTwo extends GenerateInterval {
 
                 //System.out.println("Filling Slow Intervals");
                 // Find a good ordering of each interval
-                slow_intervals = fillIntervals(slow_intervals, num_slow_tracks, resting_bpm, starting_energy);
+                slow_intervals = fillIntervals(slow_intervals, num_slow_tracks, resting_bpm, starting_energy,
+                        local_context);
 
                 //System.out.println("Ordering Tracks");
                 final_playlist = orderTracks(slow_intervals, fast_intervals);
             }
 
-            setIntervalLengths(local_moe += .01); // loosen MOE
+            local_moe = relaxMargin(local_moe + .01f); // loosen MOE
+            local_context = context.withIntervalMargin(local_moe);
 
         } while (final_playlist == null);
 
-        setIntervalLengths(margin_of_error); // restore moe
-
         return final_playlist;
     }
 
@@ -127,6 +127,7 @@ public class GenerateIntervalTwo extends GenerateInterval {
         Stack<ArrayList<TrackSimplified>> decreasing_intervals_stack = new Stack<>();
         int limit = 60;
         float local_moe = margin_of_error;
+        int tracks_per_interval = context.tracks_per_interval();
 
         // interval_BPMs length is the same as the number of increasing intervals
         for (int interval = 0; interval < interval_BPMs.length; interval++) {
@@ -136,25 +137,29 @@ public class GenerateIntervalTwo extends GenerateInterval {
             float current_target_energy = interval_energies[interval];
 
             ArrayList<TrackSimplified> double_interval = null; // reset to null each iteration for below while condition
+            GenerationContext local_context = context;
 
             do {
+                boolean is_last_try = !canRelax(local_moe);
                 ArrayList<TrackSimplified> recommended_tracks = getRecommendedTracks(current_target_bpm, limit, current_target_energy);
 
                 // Each interval has one corresponding interval to fill, hence the 2 intervals to fill in the call below
-                ArrayList<TrackSimplified> rough_intervals = findRoughIntervals(recommended_tracks, 2);
+                ArrayList<TrackSimplified> rough_intervals = findRoughIntervals(recommended_tracks, 2, local_context,
+                        is_last_try);
 
                 if (rough_intervals != null) {
 
                     int total_tracks_needed = tracks_per_interval * 2; // Number of TOTAL tracks needed for 2 intervals
-                    double_interval = fillIntervals(rough_intervals, total_tracks_needed, current_target_bpm, current_target_energy);
+                    double_interval = fillIntervals(rough_intervals, total_tracks_needed, current_target_bpm,
+                            current_target_energy, local_context);
                 }
 
-                setIntervalLengths(local_moe += .01); // loosen MOE
+                local_moe = relaxMargin(local_moe + .01f); // loosen MOE
+                local_context = context.withIntervalMargin(local_moe);
 
             } while (double_interval == null);
 
             local_moe = margin_of_error;
-            setIntervalLengths(margin_of_error); // restore moe
 
             SplitArrayList splitInterval = createSplitArrayList(double_interval); // Split double_interval in half
 
@@ -179,20 +184,23 @@ public class GenerateIntervalTwo extends GenerateInterval {
     private ArrayList<TrackSimplified> getPeakInterval() throws GetRecommendationsException{
 
         float local_moe = margin_of_error;
+        GenerationContext local_context = context;
 
         do {
+            boolean is_last_try = !canRelax(local_moe);
             ArrayList<TrackSimplified> recommended_tracks = getRecommendedTracks(target_bpm, 30, target_energy);
 
-            // Each interval has one corresponding interval to fill, hence the 2 intervals to fill in the call below
-            ArrayList<TrackSimplified> rough_intervals = findRoughIntervals(recommended_tracks, 1);
+            // The peak is a single interval
+            ArrayList<TrackSimplified> rough_intervals = findRoughIntervals(recommended_tracks, 1, local_context,
+                    is_last_try);
 
             if (rough_intervals != null) {
-
-                //MOE restored in fillIntervals
-                return fillIntervals(rough_intervals, tracks_per_interval, target_bpm, target_energy);
+                return fillIntervals(rough_intervals, context.tracks_per_interval(), target_bpm, target_energy,
+                        local_context);
             }
 
-            setIntervalLengths(local_moe += .01); // loosen MOE
+            local_moe = relaxMargin(local_moe + .01f); // loosen MOE
+            local_context = context.withIntervalMargin(local_moe);
 
         } while (true);
     }
@@ -309,20 +317,21 @@ public class GenerateIntervalTwo extends GenerateInterval {
         ArrayList<TrackSimplified> fast_intervals;
 
         float local_moe = margin_of_error;
+        GenerationContext local_context = context;
 
         do {
+            boolean is_last_try = !canRelax(local_moe);
 
             recommended_fast_tracks = getRecommendedTracks(target_bpm, 50, target_energy);
-            fast_intervals = findRoughIntervals(recommended_fast_tracks, num_fast_intervals);
+            fast_intervals = findRoughIntervals(recommended_fast_tracks, num_fast_intervals, local_context,
+                    is_last_try);
 
             if (fast_intervals != null) {
-
-                // MOE is restores in function below, no need to do it here as well
-
-                return fillIntervals(fast_intervals, num_fast_tracks, target_bpm, target_energy);
+                return fillIntervals(fast_intervals, num_fast_tracks, target_bpm, target_energy, local_context);
             }
 
-            setIntervalLengths(local_moe += .01); // loosen MOE
+            local_moe = relaxMargin(local_moe + .01f); // loosen MOE
+            local_context = context.withIntervalMargin(local_moe);
 
         } while (true);
     }
@@ -5,34 +5,30 @@ import ExceptionClasses.BrowsingExceptions.GetRecommendationsException;
 import ExceptionClasses.PersonalizationExceptions.GetUsersTopArtistsRequestException;
 import ExceptionClasses.PersonalizationExceptions.GetUsersTopTracksRequestException;
 import ExceptionClasses.ProfileExceptions.GetCurrentUsersProfileException;
-import ExceptionClasses.TrackExceptions.GetAudioFeaturesForSeveralTracksException;
+import PlaylistGenerating.PlaylistTypes.DurationSolver;
+import PlaylistGenerating.PlaylistTypes.DurationWindow;
 import PlaylistGenerating.PlaylistTypes.GeneratePlaylist;
+import PlaylistGenerating.PlaylistTypes.GenerationContext;
+import PlaylistGenerating.PlaylistTypes.TrackPool;
+import PlaylistGenerating.PlaylistTypes.WideningSearch;
 import SpotifyUtilities.PlaylistUtilities;
+import SpotifyUtilities.TrackFeatures;
 import se.michaelthelin.spotify.SpotifyApi;
-import se.michaelthelin.spotify.model_objects.specification.AudioFeatures;
 import se.michaelthelin.spotify.model_objects.specification.Playlist;
 import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
 
 import java.util.*;
 
 import static PlaylistGenerating.PlaylistTypes.CommonUtilities.*;
-import static PlaylistGenerating.PlaylistTypes.Relax.RelaxCheckingUtilities.checkIntervalDuration;
 import static SpotifyUtilities.PlaylistUtilities.createPlaylist;
-import static SpotifyUtilities.TrackUtilities.getAudioFeaturesForSeveralTracks;
-import static SpotifyUtilities.TrackUtilities.tempo_comparator;
+import static SpotifyUtilities.TrackUtilities.getKnownFeatures;
 
 public class GenerateRelax extends GeneratePlaylist {
 
-    private final int num_intervals;
-    protected static int target_len_ms;
-    protected static int min_target_len_ms;
-    protected static int max_target_len_ms;
+    private final GenerationContext context; // target window is the whole workout, interval window is one interval
     private final int limit = 21; //TODO: find out if this limit should be dynamic like the interval ones
-    protected static int interval_len_ms;
-    protected static int min_interval_len_ms;
-    protected static int max_interval_len_ms;
 
-    private static HashMap<String, Integer> selected_songs;
+    private final HashMap<String, Integer> selected_songs = new HashMap<>();
 
 
     public GenerateRelax(SpotifyApi spotify_api, String genres, int age, int workout_length, String intensity,
@@ -40,38 +36,40 @@ public class GenerateRelax extends GeneratePlaylist {
             GetUsersTopTracksRequestException, GetCurrentUsersProfileException, GetSeveralArtistsException {
         super(spotify_api, genres, age, workout_length, intensity, is_personalized);
 
-        num_intervals = findNumIntervals();
-        tracks_per_interval = Math.round(((float) workout_length / (float) num_intervals) / avg_song_len);
+        int num_intervals = findNumIntervals();
+        int tracks_per_interval = Math.round(((float) workout_length / (float) num_intervals) / avg_song_len);
 
-        target_len_ms = workout_len_ms;
-        interval_len_ms = workout_len_ms / num_intervals;
-
-        setWorkoutLengths(margin_of_error);
-        setIntervalLengths(margin_of_error);
-
-        selected_songs = new HashMap<>();
+        context = new GenerationContext(num_intervals, tracks_per_interval,
+                DurationWindow.of(workout_len_ms, margin_of_error),
+                DurationWindow.of(workout_len_ms / num_intervals, margin_of_error), null,
+                WideningSearch.newGenerationBudget());
     }
 
     @Override
     public String generatePlaylist() throws Exception {
 
-        TrackSimplified[] tracks = findTracks();
+        TrackPool selected = findTracks();
+        TrackSimplified[] tracks = selected.getTracks();
 
         eliminateDupesAndNonPlayable(spotify_api, tracks, genres, seed_artists, seed_tracks, user.getCountry());
+        scorePlaylist(tracks);
 
-        String[] track_ids = getTrackIDs(tracks);
+        // Replacements were picked around the tempo of the track they replace, so every position keeps its tempo
+        // unless the features of the track now there are known
+        float[] tempo = new float[tracks.length];
+        float[] energy = new float[tracks.length];
+        TrackFeatures[] known_features = getKnownFeatures(getTrackIDs(tracks));
 
-        // Sort the tracks in descending tempo order to make sure all tracks are in the right order
-        AudioFeatures[] features = getAudioFeaturesForSeveralTracks(spotify_api, track_ids);
-        Arrays.sort(features, tempo_comparator);
+        for (int index = 0; index < tracks.length; index++) {
+            TrackFeatures known = known_features[index];
 
-//        System.out.println("target: " + target_bpm);
-//
-//        for(AudioFeatures feature: features){
-//            System.out.println(feature.getTempo());
-//        }
+            tempo[index] = known != null ? known.tempo() : selected.getTempo(index);
+            energy[index] = known != null ? known.energy() : selected.getEnergy(index);
+        }
 
-        String[] playlist_track_uris = getTrackURIsFromAudioFeatures(features);
+        // Sort the tracks in descending tempo order to make sure all tracks are in the right order
+        TrackPool playlist_pool = TrackPool.of(tracks, tempo, energy);
+        String[] playlist_track_uris = getTrackURIs(playlist_pool.getTracks(playlist_pool.getByTempoDescending()));
 
         // Create a playlist on the user's account
         Playlist playlist = createPlaylist(spotify_api, user.getId(), user.getDisplayName());
@@ -83,10 +81,21 @@ public class GenerateRelax extends GeneratePlaylist {
         return playlist_id;
     }
 
-    private TrackSimplified[] findTracks() throws GetAudioFeaturesForSeveralTracksException,
-            GetRecommendationsException {
+    /**
+     * Picks the tracks of every interval, from the fastest interval down. Each track carries its tempo and energy:
+     * its features if they are already known, otherwise the targets of the query that returned it. An interval whose
+     * candidates never fit settles for the closest ones, so the playlist can come up short if too few are found.
+     *
+     * @return pool of the picked tracks with their tempo and energy
+     * @throws GetRecommendationsException if recommendation API call encounters an issue
+     */
+    private TrackPool findTracks() throws GetRecommendationsException {
 
         ArrayList<TrackSimplified> track_list = new ArrayList<>();
+        int num_intervals = context.num_intervals();
+        int num_tracks = num_intervals * context.tracks_per_interval();
+        float[] tempo = new float[num_tracks];
+        float[] energy_of_track = new float[num_tracks];
 
         float energy_difference = ((target_energy - starting_energy) / num_intervals);
         float energy = target_energy;
@@ -100,21 +109,36 @@ public class GenerateRelax extends GeneratePlaylist {
 
         TrackSimplified[] tracks_to_add;
         float local_moe; // Keeps track of moe for duration purposes which we will be altering here
+        GenerationContext local_context;
 
         for (int interval = 0; interval < num_intervals; interval++) {
 
             local_moe = margin_of_error;
+            local_context = context;
+
+            // Relaxing the margin does not change the query, so the candidates are only fetched once
+            TrackSimplified[] recommended_tracks = getRecommendedTracks(local_min_bpm, local_max_bpm, local_target_bpm, energy);
 
-            do {
-                TrackSimplified[] recommended_tracks = getRecommendedTracks(local_min_bpm, local_max_bpm, local_target_bpm, energy);
+            while ((tracks_to_add = getIntervalTracks(recommended_tracks, local_context)) == null) {
+                if (!canRelax(local_moe)) {
+                    markBestEffort();
+                    tracks_to_add = getClosestIntervalTracks(recommended_tracks);
+                    break;
+                }
 
-                tracks_to_add = getIntervalTracks(recommended_tracks);
+                local_moe = relaxMargin(local_moe + .01f);
+                local_context = context.withIntervalMargin(local_moe);
+            }
 
-                setIntervalLengths(local_moe += .01);
+            TrackFeatures[] known_features = getKnownFeatures(getTrackIDs(tracks_to_add));
 
-            } while (tracks_to_add == null);
+            for (int index = 0; index < tracks_to_add.length; index++) {
+                TrackFeatures known = known_features[index];
+
+                tempo[track_list.size() + index] = known != null ? known.tempo() : local_target_bpm;
+                energy_of_track[track_list.size() + index] = known != null ? known.energy() : energy;
+            }
 
-            setIntervalLengths(margin_of_error); // restore moe
             track_list = addAll(track_list, tracks_to_add); // add the new tracks to the track list
 
             // Update bpm targets for next interval
@@ -126,45 +150,40 @@ public class GenerateRelax extends GeneratePlaylist {
 
         TrackSimplified[] tracks = track_list.toArray(TrackSimplified[]::new);
 
-        return tracks;
+        return TrackPool.of(tracks, Arrays.copyOf(tempo, tracks.length), Arrays.copyOf(energy_of_track, tracks.length));
     }
 
-    private TrackSimplified[] getIntervalTracks(TrackSimplified[] tracks){
-
-        Deque<TrackSimplified> deque = new ArrayDeque<>();
-
-        int index = 0;
-        DURATION_RESULT result;
-        TrackSimplified current_track;
-
-        // Get the first batch of songs into the deque
-        for (; index < tracks_per_interval; index++) {
-            current_track = tracks[index];
-            deque.add(current_track);
-        }
-
-        result = checkIntervalDuration(deque);
-
-        if (result == DURATION_RESULT.ACCEPTABLE) return deque.toArray(TrackSimplified[]::new);
-        // If the shortest combination of tracks is too long there is no suitable combination so return null
-        if (result == DURATION_RESULT.TOO_LONG) return null;
-
-        for (; index < tracks.length; index++) {
+    /**
+     * Picks the shortest run of consecutive tracks in duration order that fits the interval window
+     *
+     * @param tracks        candidate tracks of the interval
+     * @param local_context context holding the current interval window
+     * @return tracks for the interval, null if no run fits
+     */
+    private TrackSimplified[] getIntervalTracks(TrackSimplified[] tracks, GenerationContext local_context){
 
-            current_track = tracks[index];
+        TrackPool pool = TrackPool.of(tracks);
+        int[] picks = pool.findDurationRun(local_context.tracks_per_interval(), local_context.interval());
 
-            // This essentially shifts the group of tracks we are analyzing to the right (longer) side
-            deque.removeFirst(); // remove the shortest track
-            deque.add(current_track); // add the next track in line
+        return picks == null ? null : pool.getTracks(picks);
+    }
 
-            result = checkIntervalDuration(deque);
+    /**
+     * Picks the tracks whose total duration is closest to the interval's length however far off that is, or every
+     * candidate if there are too few
+     *
+     * @param tracks candidate tracks of the interval
+     * @return tracks for the interval
+     */
+    private TrackSimplified[] getClosestIntervalTracks(TrackSimplified[] tracks) {
 
-            if (result == DURATION_RESULT.ACCEPTABLE) return deque.toArray(TrackSimplified[]::new);
+        if (tracks.length <= context.tracks_per_interval()) return tracks;
 
-            if (result == DURATION_RESULT.TOO_LONG) return null; // If now too long there is no acceptable combination
-        }
+        TrackPool pool = TrackPool.of(tracks);
+        int[] picks = DurationSolver.pickClosestSubset(pool.getDurations(), context.tracks_per_interval(),
+                context.interval().length_ms());
 
-        return null;
+        return pool.getTracks(picks);
     }
 
     /**
@@ -194,19 +213,10 @@ public class GenerateRelax extends GeneratePlaylist {
     private TrackSimplified[] getRecommendedTracks(int min_bpm, int max_bpm, int target_bpm, float energy)
             throws GetRecommendationsException {
 
-        TrackSimplified[] recommended_tracks;
-        int local_offset = 0;
-
-        do {
-
-            recommended_tracks = getSortedRecommendations(limit, min_bpm - local_offset,
-                    max_bpm + local_offset, target_bpm, energy);
-
-            local_offset++; // increase offset to find more tracks as the current bpm boundaries may be too restrictive
-
-        } while (recommended_tracks.length < limit);
-
-        return recommended_tracks;
+        // increase offset to find more tracks as the current bpm boundaries may be too restrictive
+        return WideningSearch.search(local_offset -> getSortedRecommendations(limit, min_bpm - local_offset,
+                        max_bpm + local_offset, target_bpm, energy),
+                recommended_tracks -> recommended_tracks.length >= limit, 0, deadline, context.search_budget());
     }
 
     /**
@@ -223,28 +233,4 @@ public class GenerateRelax extends GeneratePlaylist {
             return Math.round(workout_length_min / (avg_song_len * 5));
         }
     }
-
-    /**
-     * Sets the min and max workout lengths based on the provided margin of error
-     *
-     * @param margin_of_error margin of error used in setting the min and max workout lengths
-     */
-    private void setWorkoutLengths(float margin_of_error) {
-
-        // MilliSeconds of length that is acceptable for the warmup / wind-down sequence based on our MOE
-        min_target_len_ms = target_len_ms - (int) (target_len_ms * margin_of_error);
-        max_target_len_ms = target_len_ms + (int) (target_len_ms * margin_of_error);
-    }
-
-    /**
-     * Sets the min and max interval lengths based on the provided margin of error
-     *
-     * @param margin_of_error margin of error used in setting the min and max interval lengths
-     */
-    private void setIntervalLengths(float margin_of_error) {
-
-        // MilliSeconds of length that is acceptable for the warmup / wind-down sequence based on our MOE
-        min_interval_len_ms = interval_len_ms - (int) (interval_len_ms * margin_of_error);
-        max_interval_len_ms = interval_len_ms + (int) (interval_len_ms * margin_of_error);
-    }
 }
@@ -0,0 +1,52 @@
+package PlaylistGenerating.PlaylistTypes;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recommendation queries a playlist generation may still spend widening its searches (see WideningSearch). One budget
+ * is shared by every search of a generation, including the phases and intervals that search at the same time and the
+ * loops that search again each time they relax their margin, so however often a generator searches it can not make
+ * more than the budget's queries (plus the first query of each search, which is always made).
+ */
+public class SearchBudget {
+
+    private final AtomicInteger remaining;
+
+    private SearchBudget(int attempts) {
+        remaining = new AtomicInteger(attempts);
+    }
+
+    /**
+     * @param attempts number of queries the searches may make together
+     * @return budget of the provided number of queries
+     * @throws IllegalArgumentException if attempts is negative
+     */
+    public static SearchBudget of(int attempts) {
+        if (attempts < 0) throw new IllegalArgumentException("attempts must not be negative");
+
+        return new SearchBudget(attempts);
+    }
+
+    /**
+     * @return budget that never runs out
+     */
+    public static SearchBudget unlimited() {
+        return new SearchBudget(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Takes one query from the budget, if any are left
+     *
+     * @return true if the query may be made
+     */
+    boolean take() {
+        return remaining.getAndUpdate(attempts -> Math.max(0, attempts - 1)) > 0;
+    }
+
+    /**
+     * @return number of queries left
+     */
+    public int getRemaining() {
+        return remaining.get();
+    }
+}
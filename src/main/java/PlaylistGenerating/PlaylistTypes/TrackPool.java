@@ -0,0 +1,219 @@
+package PlaylistGenerating.PlaylistTypes;
+
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Candidate tracks of a generator laid out as parallel primitive arrays, so duration checks never touch the
+ * TrackSimplified objects. A track is referred to by its index (the order the tracks were provided in), and the
+ * objects are only looked up again once the picked indices are known. Every generator builds its candidates into a
+ * pool: Classic one per transition interval and one for the target sequence, Interval one per batch of
+ * recommendations, and Relax one per interval plus one for the finished playlist.
+ * <p>
+ * The pool also keeps the indices sorted by ascending duration together with prefix sums over them, so the total
+ * duration of any run of consecutive tracks in duration order is a single subtraction. That makes it cheap to rule out
+ * a window before running a DurationSolver on the durations (see canFit).
+ */
+public class TrackPool {
+
+    private final TrackSimplified[] tracks;
+    private final int[] duration_ms;
+    private final float[] tempo; // NaN where the features are not known
+    private final float[] energy; // NaN where the features are not known
+    private final int[] by_duration; // indices in ascending duration
+    private final long[] prefix_ms; // prefix_ms[rank] is the total duration of by_duration[0 .. rank - 1]
+
+    private TrackPool(TrackSimplified[] tracks, float[] tempo, float[] energy) {
+        int size = tracks.length;
+
+        this.tracks = tracks;
+        this.tempo = tempo;
+        this.energy = energy;
+        duration_ms = new int[size];
+
+        for (int index = 0; index < size; index++) duration_ms[index] = tracks[index].getDurationMs();
+
+        // Sort by duration without boxing: pack (duration, index) into one long and sort those
+        long[] keys = new long[size];
+        for (int index = 0; index < size; index++) keys[index] = ((long) duration_ms[index] << 32) | index;
+        Arrays.sort(keys);
+
+        by_duration = new int[size];
+        prefix_ms = new long[size + 1];
+
+        for (int rank = 0; rank < size; rank++) {
+            by_duration[rank] = (int) keys[rank];
+            prefix_ms[rank + 1] = prefix_ms[rank] + duration_ms[by_duration[rank]];
+        }
+    }
+
+    /**
+     * @param tracks tracks of the pool, their features unknown
+     * @return pool of the provided tracks
+     */
+    public static TrackPool of(TrackSimplified[] tracks) {
+        float[] tempo = new float[tracks.length];
+        float[] energy = new float[tracks.length];
+
+        Arrays.fill(tempo, Float.NaN);
+        Arrays.fill(energy, Float.NaN);
+
+        return new TrackPool(tracks, tempo, energy);
+    }
+
+    /**
+     * @param tracks tracks of the pool, their features unknown
+     * @return pool of the provided tracks, indexed in list order
+     */
+    public static TrackPool of(List<TrackSimplified> tracks) {
+        return of(tracks.toArray(TrackSimplified[]::new));
+    }
+
+    /**
+     * @param tracks tracks of the pool
+     * @param tempo  tempo of each track, NaN where not known
+     * @param energy energy of each track, NaN where not known
+     * @return pool of the provided tracks with their tempo and energy
+     */
+    public static TrackPool of(TrackSimplified[] tracks, float[] tempo, float[] energy) {
+        return new TrackPool(tracks, tempo.clone(), energy.clone());
+    }
+
+    /**
+     * @return number of tracks in the pool
+     */
+    public int size() {
+        return tracks.length;
+    }
+
+    /**
+     * @param index index of the track
+     * @return the track
+     */
+    public TrackSimplified getTrack(int index) {
+        return tracks[index];
+    }
+
+    /**
+     * @param index index of the track
+     * @return duration of the track in MilliSeconds
+     */
+    public int getDurationMs(int index) {
+        return duration_ms[index];
+    }
+
+    /**
+     * @return copy of the durations in MilliSeconds, by index (what the DurationSolver methods take)
+     */
+    public int[] getDurations() {
+        return duration_ms.clone();
+    }
+
+    /**
+     * @return copy of the indices in ascending duration
+     */
+    public int[] getByDuration() {
+        return by_duration.clone();
+    }
+
+    /**
+     * @param index index of the track
+     * @return tempo of the track, NaN if not known
+     */
+    public float getTempo(int index) {
+        return tempo[index];
+    }
+
+    /**
+     * @param index index of the track
+     * @return energy of the track, NaN if not known
+     */
+    public float getEnergy(int index) {
+        return energy[index];
+    }
+
+    /**
+     * @param first_rank first position in ascending duration order
+     * @param count      number of consecutive tracks
+     * @return total duration in MilliSeconds of the count tracks starting at first_rank in duration order
+     */
+    public long getWindowDurationMs(int first_rank, int count) {
+        return prefix_ms[first_rank + count] - prefix_ms[first_rank];
+    }
+
+    /**
+     * Checks whether count tracks of the pool could fit the window at all: the count shortest tracks must not be too
+     * long and the count longest must not be too short. This only rules windows out, a window that passes can still
+     * have no fitting subset (the solvers find out), but it costs two lookups.
+     *
+     * @param count  number of tracks to pick
+     * @param window acceptable total duration
+     * @return false if no count tracks of the pool can fit the window
+     */
+    public boolean canFit(int count, DurationWindow window) {
+        if (count > size()) return false;
+
+        return getWindowDurationMs(0, count) <= window.max_ms()
+                && getWindowDurationMs(size() - count, count) >= window.min_ms();
+    }
+
+    /**
+     * Finds the shortest run of count consecutive tracks in duration order whose total duration fits the window. As
+     * the runs only get longer further along, this stops as soon as a run is too long.
+     *
+     * @param count  number of tracks in the run
+     * @param window acceptable total duration
+     * @return indices of the tracks in the run in ascending duration, null if no run fits
+     */
+    public int[] findDurationRun(int count, DurationWindow window) {
+        for (int first_rank = 0; first_rank + count <= size(); first_rank++) {
+            long total_ms = getWindowDurationMs(first_rank, count);
+
+            if (total_ms > window.max_ms()) return null;
+            if (total_ms >= window.min_ms()) return Arrays.copyOfRange(by_duration, first_rank, first_rank + count);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return indices of all tracks in descending tempo, tracks with an unknown tempo last
+     */
+    public int[] getByTempoDescending() {
+        // Same packing as the duration order: the negated tempo's bits, flipped so they sort like the floats do
+        // (NaN sorts above every tempo, so unknown tempos end up last), then the index
+        long[] keys = new long[size()];
+
+        for (int index = 0; index < keys.length; index++) {
+            int bits = Float.floatToIntBits(-tempo[index]);
+            keys[index] = ((long) (bits ^ ((bits >> 31) & 0x7fffffff)) << 32) | index;
+        }
+        Arrays.sort(keys);
+
+        int[] by_tempo = new int[keys.length];
+        for (int rank = 0; rank < keys.length; rank++) by_tempo[rank] = (int) keys[rank];
+
+        return by_tempo;
+    }
+
+    /**
+     * @return copy of all tracks, by index
+     */
+    public TrackSimplified[] getTracks() {
+        return tracks.clone();
+    }
+
+    /**
+     * @param indices indices of the tracks
+     * @return the tracks, in the order of indices
+     */
+    public TrackSimplified[] getTracks(int[] indices) {
+        TrackSimplified[] picked = new TrackSimplified[indices.length];
+
+        for (int index = 0; index < indices.length; index++) picked[index] = tracks[indices[index]];
+
+        return picked;
+    }
+}
@@ -0,0 +1,196 @@
+package PlaylistGenerating.PlaylistTypes;
+
+import ExceptionClasses.BrowsingExceptions.GetRecommendationsException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/**
+ * Finds how far a recommendation query has to be widened to return enough tracks. The generators used to widen the
+ * tempo range one BPM per request until it did, which takes as many requests as the gap is wide. Instead the offset
+ * grows exponentially (+1, +2, +4, ...) until a query is good enough, and then is bisected back between the last
+ * offset that was not and the first that was, so the tightest good offset is found in O(log gap) requests.
+ * <p>
+ * A search makes at most max_attempts queries, takes every query past the first from the generation's SearchBudget
+ * (shared by all of its searches), and makes no more once the generation's deadline has passed. If none was good
+ * enough by then the widest result is returned, which can be short of what the caller asked for: callers must not
+ * assume a result is good enough, and handle a short one (best effort) instead of searching again forever.
+ */
+public class WideningSearch {
+
+    /**
+     * A query at a given offset (how much wider than the tightest range it is)
+     */
+    @FunctionalInterface
+    public interface Query<T> {
+        T fetch(int offset) throws GetRecommendationsException;
+    }
+
+    // Most queries a single search makes, past this the range is already wider than any tempo range
+    private static final int max_attempts = 16;
+
+    private static volatile int generation_budget = 96;
+
+    private static final AtomicLong total_searches = new AtomicLong();
+    private static final AtomicLong total_attempts = new AtomicLong();
+    private static final AtomicLong total_exhausted = new AtomicLong();
+    private static final AtomicLong total_out_of_budget = new AtomicLong();
+    // searches_by_attempts[n] is the number of searches that made n queries
+    private static final AtomicLongArray searches_by_attempts = new AtomicLongArray(max_attempts + 1);
+
+    /**
+     * @param budget most queries (past the first of each search) all searches of one generation make together
+     */
+    public static void configure(int budget) {
+        generation_budget = Math.max(0, budget);
+    }
+
+    /**
+     * @return a budget of the configured size, for one generation to share between all of its searches
+     */
+    public static SearchBudget newGenerationBudget() {
+        return SearchBudget.of(generation_budget);
+    }
+
+    /**
+     * @param query        query to widen
+     * @param is_enough    whether a result of the query is good enough
+     * @param first_offset offset of the tightest range to try
+     * @return result at the tightest good offset found, or the widest result if max_attempts was reached first
+     * @throws GetRecommendationsException if a query fails
+     */
+    public static <T> T search(Query<T> query, Predicate<T> is_enough, int first_offset)
+            throws GetRecommendationsException {
+        return search(query, is_enough, first_offset, Deadline.never(), SearchBudget.unlimited());
+    }
+
+    /**
+     * @param query        query to widen
+     * @param is_enough    whether a result of the query is good enough
+     * @param first_offset offset of the tightest range to try
+     * @param deadline     no further queries are made once this has passed (the first one always is)
+     * @param budget       budget every query past the first is taken from, shared with the generation's other
+     *                     searches
+     * @return result at the tightest good offset found, or the widest result if the attempts, budget or time ran out
+     * first
+     * @throws GetRecommendationsException if a query fails
+     */
+    public static <T> T search(Query<T> query, Predicate<T> is_enough, int first_offset, Deadline deadline,
+                               SearchBudget budget) throws GetRecommendationsException {
+
+        int attempts = 0;
+
+        total_searches.incrementAndGet();
+
+        try {
+            T result = query.fetch(first_offset);
+            attempts++;
+
+            if (is_enough.test(result)) return result;
+
+            // Widen exponentially until good enough, bad_offset is the widest offset known not to be
+            int bad_offset = first_offset;
+            int good_offset = -1;
+            T good_result = null;
+
+            for (int step = 1; canContinue(attempts, deadline, budget); step *= 2) {
+                int offset = first_offset + step;
+
+                result = query.fetch(offset);
+                attempts++;
+
+                if (is_enough.test(result)) {
+                    good_offset = offset;
+                    good_result = result;
+                    break;
+                }
+
+                bad_offset = offset;
+            }
+
+            if (good_result == null) {
+                total_exhausted.incrementAndGet();
+                return result; // The widest result
+            }
+
+            // Bisect back toward the tightest offset that is still good enough
+            while (good_offset - bad_offset > 1 && canContinue(attempts, deadline, budget)) {
+                int offset = bad_offset + (good_offset - bad_offset) / 2;
+
+                result = query.fetch(offset);
+                attempts++;
+
+                if (is_enough.test(result)) {
+                    good_offset = offset;
+                    good_result = result;
+                } else {
+                    bad_offset = offset;
+                }
+            }
+
+            return good_result;
+
+        } finally {
+            total_attempts.addAndGet(attempts);
+            searches_by_attempts.incrementAndGet(attempts);
+        }
+    }
+
+    /**
+     * Whether a search may make another query, taking it from the budget if so
+     *
+     * @param attempts queries the search has made so far
+     * @param deadline deadline of the generation
+     * @param budget   budget of the generation
+     * @return true if the query may be made
+     */
+    private static boolean canContinue(int attempts, Deadline deadline, SearchBudget budget) {
+        if (attempts >= max_attempts || deadline.isExpired()) return false;
+        if (budget.take()) return true;
+
+        total_out_of_budget.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return number of searches since startup
+     */
+    public static long getTotalSearches() {
+        return total_searches.get();
+    }
+
+    /**
+     * @return number of queries made by all searches since startup
+     */
+    public static long getTotalAttempts() {
+        return total_attempts.get();
+    }
+
+    /**
+     * @return number of searches that stopped without a good enough result
+     */
+    public static long getTotalExhausted() {
+        return total_exhausted.get();
+    }
+
+    /**
+     * @return number of searches cut short because their generation's budget was spent
+     */
+    public static long getTotalOutOfBudget() {
+        return total_out_of_budget.get();
+    }
+
+    /**
+     * @return number of searches by the number of queries they made, element n - 1 counts the searches that made n
+     */
+    public static List<Long> getSearchesByAttempts() {
+        List<Long> counts = new ArrayList<>();
+
+        for (int attempts = 1; attempts <= max_attempts; attempts++) counts.add(searches_by_attempts.get(attempts));
+
+        return counts;
+    }
+}
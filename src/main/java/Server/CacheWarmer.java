@@ -0,0 +1,256 @@
+package Server;
+
+import ExceptionClasses.BrowsingExceptions.GetRecommendationsException;
+import ExceptionClasses.TrackExceptions.GetAudioFeaturesForSeveralTracksException;
+import SpotifyUtilities.BrowsingUtilities;
+import SpotifyUtilities.RecommendationArguments;
+import SpotifyUtilities.RecommendationIndex;
+import SpotifyUtilities.RequestGovernor;
+import SpotifyUtilities.TrackUtilities;
+import com.neovisionaries.i18n.CountryCode;
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.model_objects.credentials.ClientCredentials;
+import se.michaelthelin.spotify.model_objects.specification.Recommendations;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Fills the recommendation caches, the RecommendationIndex, and the audio features cache in the background after a
+ * deploy, so the first users get generations at cached speed instead of paying for the empty caches.
+ * <p>
+ * Every supported genre is queried for each tempo band (75 - 175 bpm, covering every target DesiredHeartRateRanges
+ * produces) and energy band (covering the warmup energy and every DesiredEnergyRanges target), closest to the
+ * typical target tempo first. The audio features of the recommended tracks are fetched too, so they are indexed by
+ * their exact tempo and energy. The warmer stops once it has made budget requests, and waits delay_ms between
+ * requests so users are never queued behind it for long.
+ * <p>
+ * It authenticates with the app's own credentials (client credentials flow), so it can only make queries that do not
+ * need a user: genre seeded queries in a single market. The app token expires after an hour, so it is fetched again
+ * shortly before then. A query that fails is logged and skipped, only failing to authenticate stops the warmer.
+ */
+public class CacheWarmer {
+
+    public static enum STATUS {
+        DISABLED, RUNNING, FINISHED, FAILED
+    }
+
+    private static final int FIRST_TEMPO = 75;
+    private static final int LAST_TEMPO = 175;
+    private static final int TEMPO_BAND = 10;
+    private static final int TYPICAL_TEMPO = 125;
+    private static final float[][] ENERGY_BANDS = {{.55f, .75f}, {.75f, .95f}, {.35f, .55f}};
+    private static final int LIMIT = 100;
+    private static final int MAX_FEATURES_PER_REQUEST = 100;
+    private static final long TOKEN_REFRESH_MARGIN_MS = 60_000; // fetch a new app token this long before it expires
+
+    /**
+     * One query the warmer makes
+     */
+    private record WarmQuery(String genre, float min_tempo, float max_tempo, float min_energy, float max_energy) {
+    }
+
+    private final int budget;
+    private final long delay_ms;
+    private final CountryCode market;
+    private final List<WarmQuery> queries;
+
+    private volatile STATUS status;
+    private volatile int requests_made = 0;
+    private volatile int queries_made = 0;
+    private volatile int tracks_seen = 0;
+    private volatile int queries_failed = 0;
+    private volatile String error_message = null;
+
+    // Only used by the warmer thread
+    private SpotifyApi client_spotify_api;
+    private long token_expires_at_ms = 0;
+
+    /**
+     * Constructor
+     *
+     * @param genres   genres to warm (seed genres as the recommendation endpoint takes them)
+     * @param budget   maximum number of Spotify requests to make, 0 disables the warmer
+     * @param delay_ms milliseconds to wait between requests
+     * @param market   market to warm the caches for
+     */
+    public CacheWarmer(List<String> genres, int budget, long delay_ms, CountryCode market) {
+        this.budget = budget;
+        this.delay_ms = delay_ms;
+        this.market = market;
+        this.queries = buildQueries(genres);
+        this.status = budget > 0 ? STATUS.RUNNING : STATUS.DISABLED;
+    }
+
+    /**
+     * Starts warming on a daemon thread, does nothing if the warmer is disabled
+     */
+    public void start() {
+        if (status == STATUS.DISABLED) return;
+
+        Thread thread = new Thread(this::run, "cache-warmer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Makes queries (and fetches the features of the tracks they return) until every query was made or the budget
+     * is spent
+     */
+    private void run() {
+        try {
+            HashSet<String> seen_ids = new HashSet<>();
+
+            for (WarmQuery query : queries) {
+                if (requests_made >= budget) break;
+
+                try {
+                    warm(query, seen_ids);
+                } catch (GetRecommendationsException | GetAudioFeaturesForSeveralTracksException ex) {
+                    queries_failed++;
+                    error_message = ex.getMessage();
+                    System.out.println("Cache warmer skipped " + query + ": " + ex.getMessage());
+                }
+            }
+
+            status = STATUS.FINISHED;
+            System.out.println("Cache warmer finished after " + requests_made + " requests");
+
+        } catch (Exception ex) {
+            error_message = ex.getMessage();
+            status = STATUS.FAILED;
+            System.out.println("Cache warmer failed: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Makes one query and fetches the features of the tracks it returned that were not seen before
+     *
+     * @param query    query to make
+     * @param seen_ids ids of every track seen so far, the new ones are added to it
+     * @throws GetRecommendationsException                if the query failed
+     * @throws GetAudioFeaturesForSeveralTracksException if fetching the features failed
+     * @throws Exception                                  if the app could not authenticate, or the warmer was
+     *                                                    interrupted
+     */
+    private void warm(WarmQuery query, HashSet<String> seen_ids) throws Exception {
+        SpotifyApi spotify_api = getClientSpotifyApi();
+
+        RecommendationArguments arguments = new RecommendationArguments(spotify_api, LIMIT, query.genre(),
+                "", "", query.min_tempo(), query.max_tempo(), (query.min_tempo() + query.max_tempo()) / 2,
+                query.min_energy(), query.max_energy(), (query.min_energy() + query.max_energy()) / 2,
+                market);
+
+        requests_made++;
+        queries_made++;
+        Recommendations recommendations = BrowsingUtilities.getRecommendations(arguments);
+        pause();
+
+        String[] new_ids = getNewTrackIds(recommendations, seen_ids);
+        tracks_seen = seen_ids.size();
+
+        if (new_ids.length > 0 && requests_made < budget) {
+            requests_made += (new_ids.length + MAX_FEATURES_PER_REQUEST - 1) / MAX_FEATURES_PER_REQUEST;
+            TrackUtilities.getAudioFeaturesForSeveralTracks(spotify_api, new_ids);
+            RecommendationIndex.refine(arguments, recommendations);
+            pause();
+        }
+    }
+
+    /**
+     * @return SpotifyApi authenticated as the app itself (no user), with a new token if the last one is about to expire
+     * @throws Exception if the app's credentials were rejected
+     */
+    private SpotifyApi getClientSpotifyApi() throws Exception {
+        if (client_spotify_api != null && System.currentTimeMillis() < token_expires_at_ms - TOKEN_REFRESH_MARGIN_MS) {
+            return client_spotify_api;
+        }
+
+        ClientCredentials credentials = RequestGovernor.execute(Server.spotify_api.clientCredentials().build());
+
+        client_spotify_api = Server.createSpotifyApi(credentials.getAccessToken(), null);
+        token_expires_at_ms = System.currentTimeMillis() + credentials.getExpiresIn() * 1000L;
+
+        return client_spotify_api;
+    }
+
+    /**
+     * @param recommendations recommendations returned for a query
+     * @param seen_ids        ids of every track seen so far, the new ones are added to it
+     * @return ids of the recommended tracks that were not seen before
+     */
+    private static String[] getNewTrackIds(Recommendations recommendations, HashSet<String> seen_ids) {
+        if (recommendations.getTracks() == null) return new String[0];
+
+        ArrayList<String> new_ids = new ArrayList<>();
+
+        for (TrackSimplified track : recommendations.getTracks()) {
+            if (seen_ids.add(track.getId())) new_ids.add(track.getId());
+        }
+
+        return new_ids.toArray(new String[0]);
+    }
+
+    /**
+     * @param genres genres to warm
+     * @return every genre x tempo band x energy band query, the tempo bands closest to the typical tempo first
+     */
+    private static List<WarmQuery> buildQueries(List<String> genres) {
+        ArrayList<Integer> band_starts = new ArrayList<>();
+        for (int tempo = FIRST_TEMPO; tempo < LAST_TEMPO; tempo += TEMPO_BAND) band_starts.add(tempo);
+
+        band_starts.sort(Comparator.comparingInt(tempo -> Math.abs(tempo + TEMPO_BAND / 2 - TYPICAL_TEMPO)));
+
+        ArrayList<WarmQuery> queries = new ArrayList<>();
+
+        for (float[] energy_band : ENERGY_BANDS) {
+            for (int band_start : band_starts) {
+                for (String genre : genres) {
+                    queries.add(new WarmQuery(genre, band_start, band_start + TEMPO_BAND,
+                            energy_band[0], energy_band[1]));
+                }
+            }
+        }
+
+        return queries;
+    }
+
+    private void pause() throws InterruptedException {
+        if (delay_ms > 0) Thread.sleep(delay_ms);
+    }
+
+    public STATUS getStatus() {
+        return status;
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    public int getRequestsMade() {
+        return requests_made;
+    }
+
+    public int getQueriesMade() {
+        return queries_made;
+    }
+
+    public int getQueriesTotal() {
+        return queries.size();
+    }
+
+    public int getTracksSeen() {
+        return tracks_seen;
+    }
+
+    public int getQueriesFailed() {
+        return queries_failed;
+    }
+
+    public String getErrorMessage() {
+        return error_message;
+    }
+}
@@ -2,11 +2,7 @@ package Server;
 
 import ExceptionClasses.EndpointParamExceptions.NotBooleanException;
 import ExceptionClasses.InvalidInputExceptions.*;
-import PlaylistGenerating.PlaylistTypes.Classic.GenerateClassic;
-import PlaylistGenerating.PlaylistTypes.Interval.GenerateIntervalOne;
-import PlaylistGenerating.PlaylistTypes.Interval.GenerateIntervalTwo;
 import PlaylistGenerating.PlaylistTypes.GeneratePlaylist;
-import PlaylistGenerating.PlaylistTypes.Relax.GenerateRelax;
 import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
 import com.squareup.moshi.Types;
@@ -17,8 +13,6 @@ import spark.Route;
 import java.lang.reflect.Type;
 import java.util.*;
 
-import static Server.Server.spotify_api;
-
 public class GeneratePlaylistHandler implements Route {
 
     // Heavy inspiration from : https://github.com/spotify-web-api-java/spotify-web-api-java/blob/master/examples/
@@ -46,63 +40,56 @@ public class GeneratePlaylistHandler implements Route {
         String playlist_id = ""; // Will be populated and returned
 
         try {
-            verifyNonNullParameters(request);
-
-            // Fetch all the parameters
-            String access_token = request.queryParams("access_token");
-            String refresh_token = request.queryParams("refresh_token");
-            String playlist_type = request.queryParams("playlist_type"); // classic, interval_one, interval_two, relax
-            String intensity = request.queryParams("intensity");
-            String genres = request.queryParams("genres"); // british,hip-hop,country  etc
-            int age = Integer.parseInt(request.queryParams("age")); // 13-100
-            int workout_length = Integer.parseInt(request.queryParams("workout_length")); // 15-180 (minutes)
-            boolean is_personalized = verifyIsPersonalized(request.queryParams("is_personalized"));
-
-            System.out.println(genres);
-            System.out.println("personalized: " + is_personalized);
-
-            // Verify all the parameters
-            verifyPlaylistType(playlist_type);
-            verifyIntensity(intensity);
-            verifyGenre(genres);
-            verifyAge(age);
-            verifyWorkoutLength(workout_length);
-
-            spotify_api.setAccessToken(access_token);
-            spotify_api.setRefreshToken(refresh_token);
-
-            GeneratePlaylist generator;
-
-            switch (playlist_type) {
-                case "classic" -> {
-                    generator = new GenerateClassic(spotify_api, genres, age, workout_length, intensity, is_personalized);
-                }
-                case "interval_one" -> {
-                    generator = new GenerateIntervalOne(spotify_api, genres, age, workout_length, intensity, is_personalized);
-                }
-                case "interval_two" -> {
-                    generator = new GenerateIntervalTwo(spotify_api, genres, age, workout_length, intensity, is_personalized);
-                }
-                case "relax" -> {
-                    generator = new GenerateRelax(spotify_api, genres, age, workout_length, intensity, is_personalized);
-                }
-                default -> {
-                    throw new InvalidPlaylistTypeException("playlist_type must be" +
-                            " \"classic\", \"interval_one\", or \"interval_two\"");
-                }
-            }
+            PlaylistRequest playlist_request = parsePlaylistRequest(request);
+
+            GeneratePlaylist generator = playlist_request.createGenerator();
 
             playlist_id = generator.generatePlaylist();
 
-            return serialize("Success", url, playlist_id);
+            return serialize("Success", url, playlist_id, generator.getQuality(), generator.isBestEffort());
 
         } catch (Exception ex) {
             ex.printStackTrace();
 
-            return serialize("Failure: " + ex.getMessage(), url, null);
+            return serialize("Failure: " + ex.getMessage(), url, null, null, null);
         }
     }
 
+    /**
+     * Fetches and verifies all the generate playlist parameters from the provided request
+     *
+     * @param request user request to be parsed
+     * @return PlaylistRequest holding the verified parameters
+     * @throws Exception if any parameter was not provided or is invalid
+     */
+    public static PlaylistRequest parsePlaylistRequest(Request request) throws Exception {
+        verifyNonNullParameters(request);
+
+        // Fetch all the parameters
+        String access_token = request.queryParams("access_token");
+        String refresh_token = request.queryParams("refresh_token");
+        String playlist_type = request.queryParams("playlist_type"); // classic, interval_one, interval_two, relax
+        String intensity = request.queryParams("intensity");
+        String genres = request.queryParams("genres"); // british,hip-hop,country  etc
+        int age = Integer.parseInt(request.queryParams("age")); // 13-100
+        int workout_length = Integer.parseInt(request.queryParams("workout_length")); // 15-180 (minutes)
+        boolean is_personalized = verifyIsPersonalized(request.queryParams("is_personalized"));
+        long deadline_ms = parseDeadline(request.queryParams("deadline_ms")); // optional, milliseconds
+
+        System.out.println(genres);
+        System.out.println("personalized: " + is_personalized);
+
+        // Verify all the parameters
+        verifyPlaylistType(playlist_type);
+        verifyIntensity(intensity);
+        verifyGenre(genres);
+        verifyAge(age);
+        verifyWorkoutLength(workout_length);
+
+        return new PlaylistRequest(access_token, refresh_token, playlist_type, intensity, genres, age,
+                workout_length, is_personalized, deadline_ms);
+    }
+
     /**
      * Verifies all parameters were passed to the endpoint
      *
@@ -216,6 +203,25 @@ public class GeneratePlaylistHandler implements Route {
         }
     }
 
+    /**
+     * Parses the optional deadline parameter, falling back to the server's default when it is not provided
+     *
+     * @param deadline_ms provided deadline in milliseconds, may be null
+     * @return milliseconds generation may take
+     * @throws InvalidDeadlineException if the deadline is not a positive whole number
+     */
+    public static long parseDeadline(String deadline_ms) throws InvalidDeadlineException {
+        if (deadline_ms == null) return ServerSettings.generation_deadline_ms;
+
+        try {
+            long parsed = Long.parseLong(deadline_ms);
+            if (parsed > 0) return parsed;
+        } catch (NumberFormatException ignored) {
+        }
+
+        throw new InvalidDeadlineException("deadline_ms must be a positive number of milliseconds");
+    }
+
     public static boolean verifyIsPersonalized(String is_personalized) throws NotBooleanException {
         if (is_personalized.equalsIgnoreCase("true")) return true;
         if (is_personalized.equalsIgnoreCase("false")) return false;
@@ -224,15 +230,17 @@ public class GeneratePlaylistHandler implements Route {
     }
 
     /**
-     * @return url, filepath, hasHeaders, and response, serialized as Json
+     * @return result, request, playlist_id, quality, and best_effort serialized as Json
      */
-    private String serialize(String result, String url, String playlist_id) {
+    private String serialize(String result, String url, String playlist_id, Float quality, Boolean is_best_effort) {
         try {
             // add to our response map!
             HashMap<String, Object> map = new HashMap<>();
             map.put("result", result);
             map.put("request", Objects.requireNonNullElse(url, "null"));
             map.put("playlist_id", Objects.requireNonNullElse(playlist_id, "null"));
+            map.put("quality", Objects.requireNonNullElse(quality, "null"));
+            map.put("best_effort", Objects.requireNonNullElse(is_best_effort, "null"));
 
             // .toJson our response map!
             Type responseMap = Types.newParameterizedType(Map.class, String.class, Object.class);
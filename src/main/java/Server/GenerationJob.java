@@ -0,0 +1,96 @@
+package Server;
+
+import PlaylistGenerating.PlaylistTypes.GeneratePlaylist;
+
+/**
+ * A single asynchronous playlist generation. Created when a job is submitted and updated by the worker thread running
+ * it, so every field that changes is volatile and can be read by the status endpoint at any time.
+ */
+public class GenerationJob {
+
+    public enum STATUS {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private final String job_id;
+    private final PlaylistRequest playlist_request;
+    private volatile STATUS status = STATUS.QUEUED;
+    private volatile String playlist_id;
+    private volatile String error_message;
+    private volatile Float quality;
+    private volatile Boolean is_best_effort;
+    private volatile long finished_at_ms;
+
+    /**
+     * Constructor
+     *
+     * @param job_id           id used to poll the job
+     * @param playlist_request verified parameters of the playlist to generate
+     */
+    public GenerationJob(String job_id, PlaylistRequest playlist_request) {
+        this.job_id = job_id;
+        this.playlist_request = playlist_request;
+    }
+
+    /**
+     * Generates the playlist, recording the result (or failure) on this job. Run by a worker thread.
+     * <p>
+     * finished_at_ms is always written before the terminal status, so a job seen as finished has its finish time and
+     * is not evicted early. Errors fail the job too, otherwise it would be left RUNNING forever.
+     */
+    void run() {
+        status = STATUS.RUNNING;
+
+        try {
+            GeneratePlaylist generator = playlist_request.createGenerator();
+
+            playlist_id = generator.generatePlaylist();
+            quality = generator.getQuality();
+            is_best_effort = generator.isBestEffort();
+
+            finished_at_ms = System.currentTimeMillis();
+            status = STATUS.SUCCEEDED;
+        } catch (Throwable ex) {
+            ex.printStackTrace();
+
+            error_message = ex.getMessage();
+            finished_at_ms = System.currentTimeMillis();
+            status = STATUS.FAILED;
+        }
+    }
+
+    /**
+     * @return true if the job has succeeded or failed
+     */
+    public boolean isFinished() {
+        return status == STATUS.SUCCEEDED || status == STATUS.FAILED;
+    }
+
+    public String getJobId() {
+        return job_id;
+    }
+
+    public STATUS getStatus() {
+        return status;
+    }
+
+    public String getPlaylistId() {
+        return playlist_id;
+    }
+
+    public Float getQuality() {
+        return quality;
+    }
+
+    public Boolean isBestEffort() {
+        return is_best_effort;
+    }
+
+    public String getErrorMessage() {
+        return error_message;
+    }
+
+    public long getFinishedAtMs() {
+        return finished_at_ms;
+    }
+}
@@ -0,0 +1,85 @@
+package Server;
+
+import ExceptionClasses.JobExceptions.JobNotFoundException;
+import ExceptionClasses.JobExceptions.JobQueueFullException;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs playlist generations in the background on a bounded pool of workers. Jobs wait in a bounded queue when every
+ * worker is busy, and submitting while the queue is full is rejected rather than piling up more work.
+ * Finished jobs are kept for a while so clients can poll their result, then dropped.
+ */
+public class GenerationJobManager {
+
+    private final ThreadPoolExecutor executor;
+    private final Map<String, GenerationJob> jobs = new ConcurrentHashMap<>();
+    private final long retention_ms;
+
+    /**
+     * Constructor
+     *
+     * @param num_workers    number of playlists that can be generated at the same time
+     * @param queue_capacity number of jobs that can wait for a worker before submissions are rejected
+     * @param retention_min  minutes a finished job's result is kept for polling
+     */
+    public GenerationJobManager(int num_workers, int queue_capacity, int retention_min) {
+        AtomicInteger thread_count = new AtomicInteger();
+
+        this.executor = new ThreadPoolExecutor(num_workers, num_workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue_capacity), runnable -> {
+                    Thread thread = new Thread(runnable, "generation-worker-" + thread_count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.retention_ms = TimeUnit.MINUTES.toMillis(retention_min);
+    }
+
+    /**
+     * Queues a playlist generation
+     *
+     * @param playlist_request verified parameters of the playlist to generate
+     * @return the queued job
+     * @throws JobQueueFullException if every worker is busy and the queue is full
+     */
+    public GenerationJob submit(PlaylistRequest playlist_request) throws JobQueueFullException {
+        removeExpiredJobs();
+
+        GenerationJob job = new GenerationJob(UUID.randomUUID().toString(), playlist_request);
+        jobs.put(job.getJobId(), job);
+
+        try {
+            executor.execute(job::run);
+        } catch (RejectedExecutionException ex) {
+            jobs.remove(job.getJobId());
+            throw new JobQueueFullException("Too many playlists are being generated right now, try again later");
+        }
+
+        return job;
+    }
+
+    /**
+     * @param job_id id of the job given when it was submitted
+     * @return the job with the provided id
+     * @throws JobNotFoundException if there is no job with the id (never submitted or expired)
+     */
+    public GenerationJob getJob(String job_id) throws JobNotFoundException {
+        GenerationJob job = jobs.get(job_id);
+
+        if (job == null) throw new JobNotFoundException("No job with id \"" + job_id + "\" was found");
+
+        return job;
+    }
+
+    /**
+     * Drops finished jobs whose result has been kept longer than the retention period
+     */
+    private void removeExpiredJobs() {
+        long now = System.currentTimeMillis();
+
+        jobs.values().removeIf(job -> job.isFinished() && now - job.getFinishedAtMs() > retention_ms);
+    }
+}
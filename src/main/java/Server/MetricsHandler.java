@@ -0,0 +1,91 @@
+package Server;
+
+import PlaylistGenerating.PlaylistTypes.WideningSearch;
+import SpotifyUtilities.AudioFeaturesCache;
+import SpotifyUtilities.RecommendationCache;
+import SpotifyUtilities.RecommendationIndex;
+import SpotifyUtilities.RequestGovernor;
+import SpotifyUtilities.TrackFeatureStore;
+import SpotifyUtilities.UnplayableTracks;
+import com.google.common.cache.CacheStats;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import org.apache.hc.core5.pool.PoolStats;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reports how the server is using its Spotify quota (queued callers, requests sent, rate limits hit, cache hits,
+ * requests spent widening queries)
+ */
+public class MetricsHandler implements Route {
+
+    public MetricsHandler() {
+    }
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+
+        HashMap<String, Object> map = new HashMap<>();
+        map.put("result", "Success");
+        map.put("request", request.url());
+        map.put("spotify_queue_depth", RequestGovernor.getQueueDepth());
+        map.put("spotify_total_requests", RequestGovernor.getTotalRequests());
+        map.put("spotify_total_rate_limited", RequestGovernor.getTotalRateLimited());
+        map.put("spotify_blocked_for_ms", RequestGovernor.getBlockedForMs());
+
+        PoolStats connection_stats = Server.http_manager.getPoolStats();
+        map.put("spotify_connections_leased", connection_stats.getLeased());
+        map.put("spotify_connections_idle", connection_stats.getAvailable());
+        map.put("spotify_connections_pending", connection_stats.getPending());
+
+        CacheStats recommendation_stats = RecommendationCache.getStats();
+        map.put("recommendation_cache_size", RecommendationCache.getSize());
+        map.put("recommendation_cache_hits", recommendation_stats.hitCount());
+        map.put("recommendation_cache_misses", recommendation_stats.missCount());
+        map.put("recommendation_cache_hit_rate", recommendation_stats.hitRate());
+
+        CacheStats audio_features_stats = AudioFeaturesCache.getStats();
+        map.put("audio_features_cache_size", AudioFeaturesCache.getSize());
+        map.put("audio_features_cache_hits", audio_features_stats.hitCount());
+        map.put("audio_features_cache_misses", audio_features_stats.missCount());
+        map.put("audio_features_cache_hit_rate", audio_features_stats.hitRate());
+
+        map.put("recommendation_index_groups", RecommendationIndex.getGroupCount());
+        map.put("recommendation_index_local_answers", RecommendationIndex.getLocalAnswers());
+        map.put("recommendation_index_topped_up_answers", RecommendationIndex.getToppedUpAnswers());
+
+        map.put("unplayable_tracks", UnplayableTracks.getSize());
+
+        map.put("widening_searches", WideningSearch.getTotalSearches());
+        map.put("widening_attempts", WideningSearch.getTotalAttempts());
+        map.put("widening_exhausted", WideningSearch.getTotalExhausted());
+        map.put("widening_out_of_budget", WideningSearch.getTotalOutOfBudget());
+        map.put("widening_searches_by_attempts", WideningSearch.getSearchesByAttempts());
+
+        TrackFeatureStore track_store = TrackFeatureStore.shared();
+        if (track_store != null) {
+            map.put("track_store_count", track_store.getCount());
+            map.put("track_store_capacity", track_store.getCapacity());
+        }
+
+        return serialize(map);
+    }
+
+    /**
+     * @return the provided metrics map serialized as Json
+     */
+    private String serialize(Map<String, Object> map) {
+        Type responseMap = Types.newParameterizedType(Map.class, String.class, Object.class);
+        Moshi moshi = new Moshi.Builder().build();
+        JsonAdapter<Map<String, Object>> adapter = moshi.adapter(responseMap);
+
+        return adapter.toJson(map);
+    }
+}
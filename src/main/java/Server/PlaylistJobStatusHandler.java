@@ -0,0 +1,84 @@
+package Server;
+
+import ExceptionClasses.InvalidInputExceptions.NullParameterException;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reports the status of a job queued by the submit-playlist-job endpoint. Once the job has succeeded the response
+ * holds the playlist id and its quality, if it failed the result holds the reason.
+ */
+public class PlaylistJobStatusHandler implements Route {
+
+    private final GenerationJobManager job_manager;
+
+    /**
+     * Constructor
+     *
+     * @param job_manager job manager shared with the submit endpoint
+     */
+    public PlaylistJobStatusHandler(GenerationJobManager job_manager) {
+        this.job_manager = job_manager;
+    }
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+
+        String url = request.url();
+        String job_id = request.queryParams("job_id");
+
+        try {
+            if (job_id == null) throw new NullParameterException("Parameter \"job_id\" was not provided");
+
+            GenerationJob job = job_manager.getJob(job_id);
+
+            String result = job.getStatus() == GenerationJob.STATUS.FAILED ?
+                    "Failure: " + job.getErrorMessage() : "Success";
+
+            return serialize(result, url, job_id, job.getStatus().name(), job.getPlaylistId(), job.getQuality(),
+                    job.isBestEffort());
+
+        } catch (Exception ex) {
+            return serialize("Failure: " + ex.getMessage(), url, job_id, null, null, null, null);
+        }
+    }
+
+    /**
+     * @return result, request, job_id, status, playlist_id, quality, and best_effort serialized as Json
+     */
+    private String serialize(String result, String url, String job_id, String status, String playlist_id,
+                             Float quality, Boolean is_best_effort) {
+        try {
+            // add to our response map!
+            HashMap<String, Object> map = new HashMap<>();
+            map.put("result", result);
+            map.put("request", Objects.requireNonNullElse(url, "null"));
+            map.put("job_id", Objects.requireNonNullElse(job_id, "null"));
+            map.put("status", Objects.requireNonNullElse(status, "null"));
+            map.put("playlist_id", Objects.requireNonNullElse(playlist_id, "null"));
+            map.put("quality", Objects.requireNonNullElse(quality, "null"));
+            map.put("best_effort", Objects.requireNonNullElse(is_best_effort, "null"));
+
+            // .toJson our response map!
+            Type responseMap = Types.newParameterizedType(Map.class, String.class, Object.class);
+            Moshi moshi = new Moshi.Builder().build();
+            JsonAdapter<Map<String, Object>> adapter = moshi.adapter(responseMap);
+
+            return adapter.toJson(map);
+
+        } catch (Exception e) {
+            // For debugging purposes, show in the console _why_ this fails
+            e.printStackTrace();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package Server;
+
+import ExceptionClasses.ArtistExceptions.GetSeveralArtistsException;
+import ExceptionClasses.InvalidInputExceptions.InvalidPlaylistTypeException;
+import ExceptionClasses.PersonalizationExceptions.GetUsersTopArtistsRequestException;
+import ExceptionClasses.PersonalizationExceptions.GetUsersTopTracksRequestException;
+import ExceptionClasses.ProfileExceptions.GetCurrentUsersProfileException;
+import PlaylistGenerating.PlaylistTypes.Classic.GenerateClassic;
+import PlaylistGenerating.PlaylistTypes.Deadline;
+import PlaylistGenerating.PlaylistTypes.GeneratePlaylist;
+import PlaylistGenerating.PlaylistTypes.Interval.GenerateIntervalOne;
+import PlaylistGenerating.PlaylistTypes.Interval.GenerateIntervalTwo;
+import PlaylistGenerating.PlaylistTypes.Relax.GenerateRelax;
+import se.michaelthelin.spotify.SpotifyApi;
+
+/**
+ * The verified parameters of a generate playlist request. Shared by the blocking endpoint and the job endpoints so
+ * both validate and build generators the same way.
+ * <p>
+ * {@link #access_token} access_token:       access token of the user making the request<p>
+ * {@link #refresh_token} refresh_token:     refresh token of the user making the request<p>
+ * {@link #playlist_type} playlist_type:     classic, interval_one, interval_two, or relax<p>
+ * {@link #intensity} intensity:             low, medium, or high<p>
+ * {@link #genres} genres:                   comma separated seed genres<p>
+ * {@link #age} age:                         age of the user<p>
+ * {@link #workout_length} workout_length:   length of the workout in minutes<p>
+ * {@link #is_personalized} is_personalized: whether the user's top artists and tracks should be used as seeds<p>
+ * {@link #deadline_ms} deadline_ms:         milliseconds generation may take before the closest fit so far is used<p>
+ */
+public record PlaylistRequest(String access_token, String refresh_token, String playlist_type, String intensity,
+                              String genres, int age, int workout_length, boolean is_personalized,
+                              long deadline_ms) {
+
+    /**
+     * Builds the generator for this request. This makes Spotify calls (profile, seed artists and tracks), so it should
+     * be called from whichever thread will generate the playlist. The deadline starts counting here, so time a job
+     * spent queued is not taken from it.
+     *
+     * @return generator for the requested playlist type
+     * @throws InvalidPlaylistTypeException if the playlist type is not recognized
+     */
+    public GeneratePlaylist createGenerator() throws InvalidPlaylistTypeException,
+            GetUsersTopArtistsRequestException, GetUsersTopTracksRequestException, GetCurrentUsersProfileException,
+            GetSeveralArtistsException {
+
+        // Every request gets its own SpotifyApi object, so concurrent users do not share credentials
+        SpotifyApi spotify_api = Server.createSpotifyApi(access_token, refresh_token);
+
+        Deadline deadline = Deadline.in(deadline_ms);
+
+        GeneratePlaylist generator = switch (playlist_type) {
+            case "classic" ->
+                    new GenerateClassic(spotify_api, genres, age, workout_length, intensity, is_personalized);
+            case "interval_one" ->
+                    new GenerateIntervalOne(spotify_api, genres, age, workout_length, intensity, is_personalized);
+            case "interval_two" ->
+                    new GenerateIntervalTwo(spotify_api, genres, age, workout_length, intensity, is_personalized);
+            case "relax" ->
+                    new GenerateRelax(spotify_api, genres, age, workout_length, intensity, is_personalized);
+            default -> throw new InvalidPlaylistTypeException("playlist_type must be" +
+                    " \"classic\", \"interval_one\", or \"interval_two\"");
+        };
+
+        generator.setDeadline(deadline);
+
+        return generator;
+    }
+}
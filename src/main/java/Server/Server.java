@@ -2,11 +2,27 @@ package Server;
 
 import static spark.Spark.after;
 
+import PlaylistGenerating.PlaylistTypes.ConcurrencyUtilities;
+import PlaylistGenerating.PlaylistTypes.WideningSearch;
+import SpotifyUtilities.AudioFeaturesCache;
+import SpotifyUtilities.PersonalizationUtilities;
+import SpotifyUtilities.PooledHttpManager;
+import SpotifyUtilities.RecommendationCache;
+import SpotifyUtilities.RecommendationIndex;
+import SpotifyUtilities.RequestGovernor;
+import SpotifyUtilities.TrackFeatureStore;
+import SpotifyUtilities.UnplayableTracks;
+import SpotifyUtilities.UserProfileUtilities;
+import com.neovisionaries.i18n.CountryCode;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.SpotifyHttpManager;
 import spark.Spark;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Path;
 
 /**
  * Top-level class for this demo. Contains the main() method which starts Spark and runs the various handlers.
@@ -25,12 +41,38 @@ public class Server {
 
     public static String code = "";
 
+    // A single http manager (and so a single connection pool) shared by every SpotifyApi object we build. Its
+    // HttpClient is thread safe, so per-request SpotifyApi objects can reuse its connections concurrently.
+    static final PooledHttpManager http_manager = new PooledHttpManager(ServerSettings.spotify_max_connections,
+            ServerSettings.spotify_max_connections_per_host);
+
+    // Only holds the app's credentials (used for the authorization flow), user tokens should never be set on it
     public static final SpotifyApi spotify_api = new SpotifyApi.Builder()
             .setClientId(client_id)
             .setClientSecret(client_secret)
             .setRedirectUri(redirectUri)
+            .setHttpManager(http_manager)
             .build();
 
+    /**
+     * Builds a SpotifyApi object for a single user's request. Each request gets its own SpotifyApi so concurrent users
+     * never overwrite each other's tokens, while the underlying http connections are still shared.
+     *
+     * @param access_token  access token of the user making the request
+     * @param refresh_token refresh token of the user making the request
+     * @return SpotifyApi object built with the provided user's tokens
+     */
+    public static SpotifyApi createSpotifyApi(String access_token, String refresh_token) {
+        return new SpotifyApi.Builder()
+                .setClientId(client_id)
+                .setClientSecret(client_secret)
+                .setRedirectUri(redirectUri)
+                .setHttpManager(http_manager)
+                .setAccessToken(access_token)
+                .setRefreshToken(refresh_token)
+                .build();
+    }
+
     public static void main(String[] args) {
 
 
@@ -40,6 +82,22 @@ public class Server {
         Spark.port(port);
         //Spark.port(3232);
 
+        configureThreadPool();
+        RequestGovernor.configure(ServerSettings.spotify_rate, ServerSettings.spotify_burst,
+                ServerSettings.spotify_retries);
+        RecommendationCache.configure(ServerSettings.spotify_cache_tempo_step,
+                ServerSettings.spotify_cache_energy_step / 100f, ServerSettings.spotify_cache_size,
+                ServerSettings.spotify_cache_ttl_s);
+        AudioFeaturesCache.configure(ServerSettings.audio_features_cache_size);
+        openTrackStore();
+        RecommendationIndex.configure(ServerSettings.recommendation_index_groups,
+                ServerSettings.recommendation_index_tracks, ServerSettings.recommendation_index_ttl_s);
+        UserProfileUtilities.configureProfileCache(ServerSettings.user_profile_ttl_s);
+        PersonalizationUtilities.configureSnapshots(ServerSettings.personalization_refresh_s,
+                ServerSettings.personalization_ttl_s);
+        UnplayableTracks.configure(ServerSettings.unplayable_ttl_s);
+        WideningSearch.configure(ServerSettings.widening_search_budget);
+
 
         /*
             Setting CORS headers to allow cross-origin requests from the client; this is necessary for the client to
@@ -63,12 +121,71 @@ public class Server {
             response.header("Access-Control-Allow-Methods", "*");
         });
 
+        // Shared by the job endpoints, submitted jobs run on its bounded pool of workers
+        GenerationJobManager job_manager = new GenerationJobManager(ServerSettings.job_workers,
+                ServerSettings.job_queue_capacity, ServerSettings.job_retention_min);
+
+        // Fills the caches in the background so the first users after a deploy do not pay for them
+        CacheWarmer cache_warmer = new CacheWarmer(GeneratePlaylistHandler.available_genres,
+                ServerSettings.warmer_budget, ServerSettings.warmer_delay_ms,
+                CountryCode.getByCode(ServerSettings.warmer_market));
+
         // Setting up the handlers for the endpoints
         Spark.get("generate-playlist", new GeneratePlaylistHandler());
+        Spark.get("submit-playlist-job", new SubmitPlaylistJobHandler(job_manager));
+        Spark.get("playlist-job-status", new PlaylistJobStatusHandler(job_manager));
+        Spark.get("metrics", new MetricsHandler());
+        Spark.get("warmer-status", new WarmerStatusHandler(cache_warmer));
         Spark.get("login", new LoginHandler());
         Spark.get("register-user-code", new UserCodeRegistrationHandler());
         Spark.init();
         Spark.awaitInitialization();
         System.out.println("Server started");
+
+        cache_warmer.start();
+    }
+
+    /**
+     * Maps the track feature store (see TRACK_STORE_PATH in ServerSettings). The server still runs without it, it
+     * just has to ask Spotify about every track again after a restart.
+     */
+    private static void openTrackStore() {
+        if (ServerSettings.track_store_path.isBlank()) return;
+
+        try {
+            TrackFeatureStore.openShared(Path.of(ServerSettings.track_store_path), ServerSettings.track_store_capacity);
+
+            System.out.println("Mapped track feature store with " + TrackFeatureStore.shared().getCount() + " tracks");
+        } catch (IOException ex) {
+            System.out.println("Could not open the track feature store: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Sets up the thread pool Jetty runs the handlers on, and the one generators run their subtasks on, based on the
+     * THREAD_MODE setting (see ServerSettings). Must be called before any routes are mapped, as that is when Spark
+     * creates the embedded server.
+     */
+    private static void configureThreadPool() {
+        if (ServerSettings.useVirtualThreads()) {
+            if (VirtualThreadPool.isSupported()) {
+                EmbeddedServers.add(EmbeddedServers.defaultIdentifier(),
+                        new EmbeddedJettyFactory().withThreadPool(new VirtualThreadPool()));
+                ConcurrencyUtilities.useExecutor(VirtualThreadPool.newVirtualThreadExecutor());
+
+                System.out.println("Running handlers and generation tasks on virtual threads");
+                return;
+            }
+
+            System.out.println("Virtual threads are not supported by this JVM, using platform threads");
+        }
+
+        if (ServerSettings.max_threads > 0) {
+            Spark.threadPool(ServerSettings.max_threads);
+        }
+
+        ConcurrencyUtilities.useBoundedPool(ServerSettings.generation_threads);
+
+        System.out.println("Running handlers on platform threads");
     }
 }
\ No newline at end of file
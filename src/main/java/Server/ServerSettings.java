@@ -0,0 +1,116 @@
+package Server;
+
+/**
+ * Settings the server reads from environment variables at startup. Every setting has a default, so the server runs
+ * the same as before when none are provided.
+ * <p>
+ * THREAD_MODE:        "platform" (default) runs handlers on Jetty's pool of OS threads, "virtual" runs each request
+ *                     on its own virtual thread (Java 21+, falls back to platform threads on older runtimes)<p>
+ * MAX_THREADS:        maximum number of platform threads in Jetty's pool (platform mode only), 0 uses Spark's default<p>
+ * GENERATION_THREADS: maximum number of platform threads generators run their concurrent phases and intervals on
+ *                     (platform mode only, virtual mode runs each on its own virtual thread)<p>
+ * JOB_WORKERS:        number of playlist generation jobs that run at the same time<p>
+ * JOB_QUEUE_CAPACITY: number of jobs that can wait for a worker before new submissions are rejected<p>
+ * JOB_RETENTION_MIN:  minutes a finished job's result can still be polled<p>
+ * SPOTIFY_RATE:       sustained number of requests per second sent to Spotify (shared by every user)<p>
+ * SPOTIFY_BURST:      number of requests that can be sent back to back before the rate applies<p>
+ * SPOTIFY_RETRIES:    times a request is retried after a 429 Too Many Requests<p>
+ * SPOTIFY_MAX_CONNECTIONS:          most connections to Spotify open at once, shared by every user<p>
+ * SPOTIFY_MAX_CONNECTIONS_PER_HOST: most of those open to a single host (nearly all requests go to api.spotify.com)<p>
+ * SPOTIFY_CACHE_TEMPO_STEP:  recommendation queries whose tempos round to the same multiple of this share a cached
+ *                            response ("close enough"), 0 only shares exact matches<p>
+ * SPOTIFY_CACHE_ENERGY_STEP: same as above for energies, in hundredths (2 = .02)<p>
+ * SPOTIFY_CACHE_SIZE:        maximum number of cached recommendation responses, 0 turns the cache off<p>
+ * SPOTIFY_CACHE_TTL_S:       seconds a recommendation response is cached for ("old enough" to be dropped)<p>
+ * AUDIO_FEATURES_CACHE_SIZE: maximum number of tracks whose audio features are cached, 0 turns the cache off<p>
+ * TRACK_STORE_PATH:          file the track feature store is kept in, empty (default) turns the store off. Opt in
+ *                            with a path on a disk that outlives the process (not Heroku's ephemeral filesystem,
+ *                            where the file is lost on every restart anyway); the file starts at
+ *                            TRACK_STORE_CAPACITY * 64 bytes (16 MB by default)<p>
+ * TRACK_STORE_CAPACITY:      number of tracks a new store file has room for before it has to grow<p>
+ * RECOMMENDATION_INDEX_GROUPS: number of seed/market groups the local recommendation index keeps, 0 turns it off<p>
+ * RECOMMENDATION_INDEX_TRACKS: number of tracks the local recommendation index keeps per group<p>
+ * RECOMMENDATION_INDEX_TTL_S:  seconds a group is kept after it last grew<p>
+ * USER_PROFILE_TTL_S:          seconds a user's profile is reused for requests made with the same access token<p>
+ * PERSONALIZATION_REFRESH_S:   seconds after which a user's top artists/tracks are refreshed in the background<p>
+ * PERSONALIZATION_TTL_S:       seconds after which a user's top artists/tracks are too old to use at all<p>
+ * UNPLAYABLE_TTL_S:            seconds a track seen as unplayable in a market is skipped for in that market<p>
+ * WIDENING_SEARCH_BUDGET:      most recommendation requests one playlist generation spends widening its queries' tempo
+ *                              ranges, shared by all of its searches (each search's first request is always made)<p>
+ * GENERATION_DEADLINE_MS:      milliseconds a generation may take before the closest fit so far is used, for requests
+ *                              that do not pass their own deadline_ms<p>
+ * WARMER_BUDGET:               Spotify requests the startup cache warmer may make, 0 (default) disables it<p>
+ * WARMER_DELAY_MS:             milliseconds the cache warmer waits between requests<p>
+ * WARMER_MARKET:               market (ISO country code) the cache warmer warms the caches for
+ */
+public class ServerSettings {
+
+    public static final String thread_mode = getString("THREAD_MODE", "platform");
+    public static final int max_threads = getInt("MAX_THREADS", 0);
+    public static final int generation_threads = getInt("GENERATION_THREADS", 32);
+    public static final int job_workers = getInt("JOB_WORKERS", 8);
+    public static final int job_queue_capacity = getInt("JOB_QUEUE_CAPACITY", 32);
+    public static final int job_retention_min = getInt("JOB_RETENTION_MIN", 15);
+    public static final int spotify_rate = getInt("SPOTIFY_RATE", 10);
+    public static final int spotify_burst = getInt("SPOTIFY_BURST", 20);
+    public static final int spotify_retries = getInt("SPOTIFY_RETRIES", 3);
+    public static final int spotify_max_connections = getInt("SPOTIFY_MAX_CONNECTIONS", 64);
+    public static final int spotify_max_connections_per_host = getInt("SPOTIFY_MAX_CONNECTIONS_PER_HOST", 32);
+    public static final int spotify_cache_tempo_step = getInt("SPOTIFY_CACHE_TEMPO_STEP", 2);
+    public static final int spotify_cache_energy_step = getInt("SPOTIFY_CACHE_ENERGY_STEP", 2);
+    public static final int spotify_cache_size = getInt("SPOTIFY_CACHE_SIZE", 2_000);
+    public static final int spotify_cache_ttl_s = getInt("SPOTIFY_CACHE_TTL_S", 600);
+    public static final int audio_features_cache_size = getInt("AUDIO_FEATURES_CACHE_SIZE", 100_000);
+    public static final String track_store_path = getString("TRACK_STORE_PATH", "");
+    public static final int track_store_capacity = getInt("TRACK_STORE_CAPACITY", 1 << 18);
+    public static final int recommendation_index_groups = getInt("RECOMMENDATION_INDEX_GROUPS", 500);
+    public static final int recommendation_index_tracks = getInt("RECOMMENDATION_INDEX_TRACKS", 2_000);
+    public static final int recommendation_index_ttl_s = getInt("RECOMMENDATION_INDEX_TTL_S", 6 * 60 * 60);
+    public static final int user_profile_ttl_s = getInt("USER_PROFILE_TTL_S", 300);
+    public static final int personalization_refresh_s = getInt("PERSONALIZATION_REFRESH_S", 6 * 60 * 60);
+    public static final int personalization_ttl_s = getInt("PERSONALIZATION_TTL_S", 7 * 24 * 60 * 60);
+    public static final int unplayable_ttl_s = getInt("UNPLAYABLE_TTL_S", 24 * 60 * 60);
+    public static final int widening_search_budget = getInt("WIDENING_SEARCH_BUDGET", 96);
+    public static final int generation_deadline_ms = getInt("GENERATION_DEADLINE_MS", 60_000);
+    public static final int warmer_budget = getInt("WARMER_BUDGET", 0);
+    public static final int warmer_delay_ms = getInt("WARMER_DELAY_MS", 250);
+    public static final String warmer_market = getString("WARMER_MARKET", "US");
+
+    /**
+     * @return true if handlers should be run on virtual threads
+     */
+    public static boolean useVirtualThreads() {
+        return thread_mode.equalsIgnoreCase("virtual");
+    }
+
+    /**
+     * Reads a String setting from the environment
+     *
+     * @param name          name of the environment variable
+     * @param default_value value used if the variable is not set or is blank
+     * @return value of the setting
+     */
+    static String getString(String name, String default_value) {
+        String value = System.getenv(name);
+
+        if (value == null || value.isBlank()) return default_value;
+
+        return value.trim();
+    }
+
+    /**
+     * Reads an int setting from the environment
+     *
+     * @param name          name of the environment variable
+     * @param default_value value used if the variable is not set or is not a number
+     * @return value of the setting
+     */
+    static int getInt(String name, int default_value) {
+        try {
+            return Integer.parseInt(getString(name, String.valueOf(default_value)));
+        } catch (NumberFormatException ex) {
+            System.out.println("Setting " + name + " is not a number, using " + default_value);
+            return default_value;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package Server;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Takes the same parameters as the generate-playlist endpoint, but queues the generation and returns a job id right
+ * away. The result is then polled from the playlist-job-status endpoint.
+ */
+public class SubmitPlaylistJobHandler implements Route {
+
+    private final GenerationJobManager job_manager;
+
+    /**
+     * Constructor
+     *
+     * @param job_manager job manager shared with the status endpoint
+     */
+    public SubmitPlaylistJobHandler(GenerationJobManager job_manager) {
+        this.job_manager = job_manager;
+    }
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+
+        String url = request.url();
+
+        try {
+            PlaylistRequest playlist_request = GeneratePlaylistHandler.parsePlaylistRequest(request);
+
+            GenerationJob job = job_manager.submit(playlist_request);
+
+            return serialize("Success", url, job.getJobId());
+
+        } catch (Exception ex) {
+            ex.printStackTrace();
+
+            return serialize("Failure: " + ex.getMessage(), url, null);
+        }
+    }
+
+    /**
+     * @return result, request, and job_id serialized as Json
+     */
+    private String serialize(String result, String url, String job_id) {
+        try {
+            // add to our response map!
+            HashMap<String, Object> map = new HashMap<>();
+            map.put("result", result);
+            map.put("request", Objects.requireNonNullElse(url, "null"));
+            map.put("job_id", Objects.requireNonNullElse(job_id, "null"));
+
+            // .toJson our response map!
+            Type responseMap = Types.newParameterizedType(Map.class, String.class, Object.class);
+            Moshi moshi = new Moshi.Builder().build();
+            JsonAdapter<Map<String, Object>> adapter = moshi.adapter(responseMap);
+
+            return adapter.toJson(map);
+
+        } catch (Exception e) {
+            // For debugging purposes, show in the console _why_ this fails
+            e.printStackTrace();
+            throw e;
+        }
+    }
+}
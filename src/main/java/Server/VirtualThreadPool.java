@@ -0,0 +1,100 @@
+package Server;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jetty thread pool that runs every task on its own virtual thread. Handlers spend nearly all of their time blocked on
+ * Spotify http calls, so a parked virtual thread only costs a small heap-allocated stack instead of an OS thread.
+ * <p>
+ * The project still compiles for Java 17, so the virtual thread executor is looked up by reflection. Use
+ * {@link #isSupported()} before building one.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+    private final ExecutorService executor;
+
+    /**
+     * Constructor, creates the virtual thread executor
+     *
+     * @throws IllegalStateException if the running JVM does not support virtual threads
+     */
+    public VirtualThreadPool() {
+        this.executor = newVirtualThreadExecutor();
+
+        if (executor == null) {
+            throw new IllegalStateException("Virtual threads are not supported by this JVM (Java 21+ is required)");
+        }
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return getVirtualThreadFactory() != null;
+    }
+
+    /**
+     * @return the Executors.newVirtualThreadPerTaskExecutor method, or null if it does not exist
+     */
+    private static Method getVirtualThreadFactory() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return new virtual thread per task executor, or null if virtual threads are not supported
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        Method factory = getVirtualThreadFactory();
+
+        if (factory == null) return null;
+
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        executor.shutdown();
+        super.doStop();
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    // Virtual threads are created per task, so there is no fixed number of threads to report
+
+    @Override
+    public int getThreads() {
+        return 0;
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+}
@@ -0,0 +1,59 @@
+package Server;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reports the progress of the startup cache warmer (see CacheWarmer)
+ */
+public class WarmerStatusHandler implements Route {
+
+    private final CacheWarmer cache_warmer;
+
+    /**
+     * Constructor
+     *
+     * @param cache_warmer the warmer started with the server
+     */
+    public WarmerStatusHandler(CacheWarmer cache_warmer) {
+        this.cache_warmer = cache_warmer;
+    }
+
+    @Override
+    public Object handle(Request request, Response response) throws Exception {
+
+        HashMap<String, Object> map = new HashMap<>();
+        map.put("result", cache_warmer.getStatus() == CacheWarmer.STATUS.FAILED ?
+                "Failure: " + cache_warmer.getErrorMessage() : "Success");
+        map.put("request", Objects.requireNonNullElse(request.url(), "null"));
+        map.put("status", cache_warmer.getStatus().name());
+        map.put("budget", cache_warmer.getBudget());
+        map.put("requests_made", cache_warmer.getRequestsMade());
+        map.put("queries_made", cache_warmer.getQueriesMade());
+        map.put("queries_total", cache_warmer.getQueriesTotal());
+        map.put("queries_failed", cache_warmer.getQueriesFailed());
+        map.put("tracks_seen", cache_warmer.getTracksSeen());
+
+        return serialize(map);
+    }
+
+    /**
+     * @return the provided status map serialized as Json
+     */
+    private String serialize(Map<String, Object> map) {
+        Type responseMap = Types.newParameterizedType(Map.class, String.class, Object.class);
+        Moshi moshi = new Moshi.Builder().build();
+        JsonAdapter<Map<String, Object>> adapter = moshi.adapter(responseMap);
+
+        return adapter.toJson(map);
+    }
+}
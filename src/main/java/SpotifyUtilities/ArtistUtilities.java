@@ -1,14 +1,79 @@
 package SpotifyUtilities;
 
 import ExceptionClasses.ArtistExceptions.GetSeveralArtistsException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.model_objects.specification.Artist;
 import se.michaelthelin.spotify.requests.data.artists.GetSeveralArtistsRequest;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class ArtistUtilities {
 
+    private static final int MAX_ARTISTS_PER_REQUEST = 50;
+
+    // An artist's genres are curated by Spotify and rarely change, so they are shared by every user for a day
+    private static final Cache<String, String[]> genre_cache = CacheBuilder.newBuilder()
+            .maximumSize(50_000)
+            .expireAfterWrite(1, TimeUnit.DAYS)
+            .build();
+
+    /**
+     * Gets the genres of several artists. Genres already in the shared artist genre cache are not fetched again, the
+     * rest are fetched 50 at a time (the endpoint's limit) and cached.
+     *
+     * @param spotifyApi spotify api object needed for api calls
+     * @param ids ids of the artists
+     * @return genres of each artist by id (artists Spotify does not know are left out)
+     * @throws GetSeveralArtistsException if an error was encountered in the api call
+     */
+    public static Map<String, String[]> getArtistGenres(SpotifyApi spotifyApi, Collection<String> ids)
+            throws GetSeveralArtistsException {
+
+        HashMap<String, String[]> artist_genres = new HashMap<>();
+        LinkedHashSet<String> missing_ids = new LinkedHashSet<>();
+
+        for (String id : ids) {
+            String[] genres = genre_cache.getIfPresent(id);
+
+            if (genres != null) artist_genres.put(id, genres);
+            else missing_ids.add(id);
+        }
+
+        String[] ids_to_fetch = missing_ids.toArray(new String[0]);
+
+        for (int start = 0; start < ids_to_fetch.length; start += MAX_ARTISTS_PER_REQUEST) {
+            String[] chunk = Arrays.copyOfRange(ids_to_fetch, start,
+                    Math.min(start + MAX_ARTISTS_PER_REQUEST, ids_to_fetch.length));
+
+            for (Artist artist : getSeveralArtists(spotifyApi, chunk)) {
+                if (artist != null) artist_genres.put(artist.getId(), cacheGenres(artist));
+            }
+        }
+
+        return artist_genres;
+    }
+
+    /**
+     * Adds the genres of an artist fetched some other way (e.g. as a top artist) to the shared artist genre cache
+     *
+     * @param artist artist with its genres
+     * @return the artist's genres
+     */
+    public static String[] cacheGenres(Artist artist) {
+        String[] genres = artist.getGenres() == null ? new String[0] : artist.getGenres();
+        genre_cache.put(artist.getId(), genres);
+
+        return genres;
+    }
+
     /**
      * Gets several artists based on the provided ids
      * @param spotifyApi spotify api object needed for api calls
@@ -22,7 +87,7 @@ public class ArtistUtilities {
             GetSeveralArtistsRequest getSeveralArtistsRequest = spotifyApi.getSeveralArtists(ids)
                     .build();
 
-            return getSeveralArtistsRequest.execute();
+            return RequestGovernor.execute(getSeveralArtistsRequest);
 
         } catch (Exception ex) {
 
@@ -0,0 +1,83 @@
+package SpotifyUtilities;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Caches the audio features of every track we have looked up. A track's features never change, so entries are only
+ * dropped (least recently used first) once there are more than max_entries, never because of their age.
+ * <p>
+ * Only {@link TrackFeatures} are kept, roughly the id plus 12 bytes per track, so the default of 100,000 tracks costs
+ * a few megabytes. To change it call {@link #configure(long)} before the server starts (see AUDIO_FEATURES_CACHE_SIZE
+ * in ServerSettings).
+ * <p>
+ * Behind the cache sits the shared TrackFeatureStore (if the server opened one), so tracks looked up before the last
+ * restart are read from disk instead of being fetched again.
+ */
+public class AudioFeaturesCache {
+
+    private static volatile Cache<String, TrackFeatures> cache = buildCache(100_000);
+
+    /**
+     * Rebuilds the cache with the provided size (any cached entries are dropped)
+     *
+     * @param max_entries maximum number of tracks cached, 0 turns the cache off
+     */
+    public static void configure(long max_entries) {
+        AudioFeaturesCache.cache = buildCache(max_entries);
+    }
+
+    /**
+     * @param max_entries maximum number of tracks cached
+     * @return new empty cache
+     */
+    private static Cache<String, TrackFeatures> buildCache(long max_entries) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(max_entries)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param track_id id of the track
+     * @return cached (or stored) features of the track, null if they are neither
+     */
+    static TrackFeatures get(String track_id) {
+        TrackFeatures features = cache.getIfPresent(track_id);
+        if (features != null) return features;
+
+        TrackFeatureStore store = TrackFeatureStore.shared();
+        if (store == null) return null;
+
+        features = store.getFeatures(track_id);
+        if (features != null) cache.put(track_id, features);
+
+        return features;
+    }
+
+    /**
+     * @param track_id id of the track
+     * @param features features of the track
+     */
+    static void put(String track_id, TrackFeatures features) {
+        cache.put(track_id, features);
+
+        TrackFeatureStore store = TrackFeatureStore.shared();
+        if (store != null) store.putFeatures(track_id, features);
+    }
+
+    /**
+     * @return hit, miss, and eviction counts of the cache
+     */
+    public static CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return number of tracks currently cached
+     */
+    public static long getSize() {
+        return cache.size();
+    }
+}
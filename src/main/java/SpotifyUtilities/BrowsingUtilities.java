@@ -1,17 +1,21 @@
 package SpotifyUtilities;
 
 import ExceptionClasses.BrowsingExceptions.GetRecommendationsException;
+import com.neovisionaries.i18n.CountryCode;
 import org.apache.hc.core5.http.ParseException;
-import org.eclipse.jetty.websocket.common.io.http.HttpResponseHeaderParser;
-import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
 import se.michaelthelin.spotify.model_objects.specification.Recommendations;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
 import se.michaelthelin.spotify.requests.data.browse.GetRecommendationsRequest;
 
 import java.io.IOException;
 
 public class BrowsingUtilities {
 
+    // Identical recommendation queries made at the same time (often by different users) share one call to Spotify
+    private static final SingleFlight<RecommendationKey, Recommendations> in_flight_recommendations =
+            new SingleFlight<>();
+
     /**
      * Gets recommendations using Spotify's recommendation endpoint
      *
@@ -21,29 +25,37 @@ public class BrowsingUtilities {
     public static Recommendations getRecommendations(RecommendationArguments args)
             throws GetRecommendationsException {
 
-        try {
-
-            GetRecommendationsRequest getRecommendationsRequest =
-                    args.spotify_api().getRecommendations()
-                            .limit(args.limit())
-                            .min_tempo(args.min_tempo())
-                            .max_tempo(args.max_tempo())
-                            .target_tempo(args.target_tempo())
-                            .min_energy(args.min_energy())
-                            .max_energy(args.max_energy())
-                            .target_energy(args.energy())
-                            .seed_genres(args.seed_genres())
-                            .seed_tracks(args.seed_tracks())
-                            .seed_artists(args.seed_artists())
-                            .market(args.market())
-                            .build();
+        GetRecommendationsRequest getRecommendationsRequest =
+                args.spotify_api().getRecommendations()
+                        .limit(args.limit())
+                        .min_tempo(args.min_tempo())
+                        .max_tempo(args.max_tempo())
+                        .target_tempo(args.target_tempo())
+                        .min_energy(args.min_energy())
+                        .max_energy(args.max_energy())
+                        .target_energy(args.energy())
+                        .seed_genres(args.seed_genres())
+                        .seed_tracks(args.seed_tracks())
+                        .seed_artists(args.seed_artists())
+                        .market(args.market())
+                        .build();
+
+        return executeShared(RecommendationKey.forRecommendations(args), getRecommendationsRequest);
+    }
 
-            return getRecommendationsRequest.execute();
+    /**
+     * Gets recommendations from the RecommendationIndex when it already holds enough tracks that satisfy the query,
+     * otherwise from Spotify's recommendation endpoint (topping up whatever tracks the index did hold)
+     *
+     * @return Recommendations object with the found tracks
+     * @throws GetRecommendationsException if exception encountered in getRecommendationsRequest.execute()
+     */
+    public static Recommendations getIndexedRecommendations(RecommendationArguments args)
+            throws GetRecommendationsException {
 
-        } catch (IOException | SpotifyWebApiException | ParseException ex) {
+        TrackSimplified[] indexed_tracks = RecommendationIndex.findTracks(args);
 
-            throw new GetRecommendationsException(ex.getMessage());
-        }
+        return RecommendationIndex.answer(indexed_tracks, args, () -> getRecommendations(args));
     }
 
     /**
@@ -55,23 +67,17 @@ public class BrowsingUtilities {
     public static Recommendations getGenreRecommendations(RecommendationArguments args)
             throws GetRecommendationsException {
 
-        try {
-            GetRecommendationsRequest getRecommendationsRequest =
-                    args.spotify_api().getRecommendations()
-                            .limit(args.limit())
-                            .seed_genres(args.seed_genres())
-                            .min_tempo(args.min_tempo())
-                            .max_tempo(args.max_tempo())
-                            .target_tempo(args.target_tempo())
-                            .market(args.market())
-                            .build();
-
-            return getRecommendationsRequest.execute();
-
-        } catch (IOException | SpotifyWebApiException | ParseException ex) {
-
-            throw new GetRecommendationsException(ex.getMessage());
-        }
+        GetRecommendationsRequest getRecommendationsRequest =
+                args.spotify_api().getRecommendations()
+                        .limit(args.limit())
+                        .seed_genres(args.seed_genres())
+                        .min_tempo(args.min_tempo())
+                        .max_tempo(args.max_tempo())
+                        .target_tempo(args.target_tempo())
+                        .market(args.market())
+                        .build();
+
+        return executeShared(RecommendationKey.forGenreRecommendations(args), getRecommendationsRequest);
     }
 
     //TODO: Overload this method in case we do not always want to use all these arguments :)
@@ -85,23 +91,79 @@ public class BrowsingUtilities {
     public static Recommendations getRecommendationTempoRange(RecommendationArguments args)
             throws GetRecommendationsException {
 
-        try {
-            GetRecommendationsRequest getRecommendationsRequest =
-                    args.spotify_api().getRecommendations()
-                            .limit(args.limit())
-                            .min_tempo(args.min_tempo())
-                            .max_tempo(args.max_tempo())
-                            .seed_genres(args.seed_genres())
-                            .seed_tracks(args.seed_tracks())
-                            .seed_artists(args.seed_artists())
-                            .market(args.market())
-                            .build();
+        GetRecommendationsRequest getRecommendationsRequest =
+                args.spotify_api().getRecommendations()
+                        .limit(args.limit())
+                        .min_tempo(args.min_tempo())
+                        .max_tempo(args.max_tempo())
+                        .seed_genres(args.seed_genres())
+                        .seed_tracks(args.seed_tracks())
+                        .seed_artists(args.seed_artists())
+                        .market(args.market())
+                        .build();
+
+        return executeShared(RecommendationKey.forTempoRange(args), getRecommendationsRequest);
+    }
 
-            return getRecommendationsRequest.execute();
+    /**
+     * Answers the recommendation request from the cache if a close enough query was made recently, otherwise executes
+     * it (or joins an identical request already in flight) and caches the response
+     *
+     * @param key     key identifying the request
+     * @param request request to execute if it can not be answered from the cache
+     * @return copy of the Recommendations, callers sort the tracks array in place so they can not share one
+     * @throws GetRecommendationsException if exception encountered in request.execute()
+     */
+    private static Recommendations executeShared(RecommendationKey key, GetRecommendationsRequest request)
+            throws GetRecommendationsException {
+
+        Recommendations recommendations = RecommendationCache.get(key);
+
+        if (recommendations == null) {
+            recommendations = in_flight_recommendations.execute(key, () -> {
+                try {
+                    return RequestGovernor.execute(request);
+                } catch (IOException | SpotifyWebApiException | ParseException ex) {
+                    throw new GetRecommendationsException(ex.getMessage());
+                }
+            });
+
+            RecommendationCache.put(key, recommendations);
+            storePlayability(recommendations, key.market());
+            RecommendationIndex.add(key, recommendations);
+        }
+
+        return copyRecommendations(recommendations);
+    }
+
+    /**
+     * Remembers which of the recommended tracks are playable in the market they were recommended for (unplayable
+     * tracks also go into the UnplayableTracks negative cache)
+     *
+     * @param recommendations Recommendations fetched for the market
+     * @param market          market the recommendations were fetched for, null if none was provided
+     */
+    private static void storePlayability(Recommendations recommendations, CountryCode market) {
+        if (market == null || recommendations.getTracks() == null) return;
+
+        TrackFeatureStore store = TrackFeatureStore.shared();
 
-        } catch (IOException | SpotifyWebApiException | ParseException ex) {
+        for (TrackSimplified track : recommendations.getTracks()) {
+            if (track.getIsPlayable() == null) continue;
 
-            throw new GetRecommendationsException(ex.getMessage());
+            if (!track.getIsPlayable()) UnplayableTracks.add(track.getId(), market);
+            if (store != null) store.putPlayable(track.getId(), market, track.getIsPlayable());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @param recommendations Recommendations to copy
+     * @return Recommendations with its own tracks array (the tracks themselves are immutable and shared)
+     */
+    static Recommendations copyRecommendations(Recommendations recommendations) {
+        return new Recommendations.Builder()
+                .setSeeds(recommendations.getSeeds())
+                .setTracks(recommendations.getTracks().clone())
+                .build();
+    }
+}
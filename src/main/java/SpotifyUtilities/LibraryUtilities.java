@@ -24,7 +24,7 @@ public class LibraryUtilities {
 
             GetUsersSavedTracksRequest getUsersSavedTracksRequest = spotify_api.getUsersSavedTracks().build();
 
-            Paging<SavedTrack> savedTrackPaging = getUsersSavedTracksRequest.execute();
+            Paging<SavedTrack> savedTrackPaging = RequestGovernor.execute(getUsersSavedTracksRequest);
 
             return savedTrackPaging.getItems();
 
@@ -47,7 +47,7 @@ public class LibraryUtilities {
             GetCurrentUsersSavedAlbumsRequest getCurrentUsersSavedAlbumsRequest =
                     spotify_api.getCurrentUsersSavedAlbums().build();
 
-            Paging<SavedAlbum> savedAlbumPaging = getCurrentUsersSavedAlbumsRequest.execute();
+            Paging<SavedAlbum> savedAlbumPaging = RequestGovernor.execute(getCurrentUsersSavedAlbumsRequest);
 
             return savedAlbumPaging.getItems();
 
@@ -0,0 +1,37 @@
+package SpotifyUtilities;
+
+import se.michaelthelin.spotify.model_objects.specification.Artist;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.Map;
+
+/**
+ * Everything seed selection needs to know about a user's long term taste, fetched once and reused until it is stale.
+ * <p>
+ * {@link #top_artists} top_artists:     the user's long term top artists (with their genres)<p>
+ * {@link #top_tracks} top_tracks:       the user's long term top tracks (with their artists' ids)<p>
+ * {@link #artist_genres} artist_genres: genres of every artist on a top track, by artist id<p>
+ * {@link #fetched_at_ms} fetched_at_ms: when the snapshot was fetched (System.currentTimeMillis())
+ */
+public record PersonalizationSnapshot(
+        Artist[] top_artists,
+        Track[] top_tracks,
+        Map<String, String[]> artist_genres,
+        long fetched_at_ms
+) {
+
+    /**
+     * @param artist_id id of an artist on one of the top tracks
+     * @return genres of the artist, empty if the artist is not known
+     */
+    public String[] getArtistGenres(String artist_id) {
+        return artist_genres.getOrDefault(artist_id, new String[0]);
+    }
+
+    /**
+     * @return milliseconds since the snapshot was fetched
+     */
+    public long getAgeMs() {
+        return System.currentTimeMillis() - fetched_at_ms;
+    }
+}
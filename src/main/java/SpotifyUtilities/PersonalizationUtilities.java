@@ -1,16 +1,158 @@
 package SpotifyUtilities;
 
+import ExceptionClasses.ArtistExceptions.GetSeveralArtistsException;
 import ExceptionClasses.PersonalizationExceptions.GetUsersTopArtistsRequestException;
 import ExceptionClasses.PersonalizationExceptions.GetUsersTopTracksRequestException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.hc.core5.http.ParseException;
 import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import se.michaelthelin.spotify.model_objects.credentials.AuthorizationCodeCredentials;
 import se.michaelthelin.spotify.model_objects.specification.Artist;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
 import se.michaelthelin.spotify.model_objects.specification.Paging;
 import se.michaelthelin.spotify.model_objects.specification.Track;
 import se.michaelthelin.spotify.requests.data.personalization.simplified.GetUsersTopArtistsRequest;
 import se.michaelthelin.spotify.requests.data.personalization.simplified.GetUsersTopTracksRequest;
 
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 public class PersonalizationUtilities {
 
+    // Snapshots by user id, a user's token changes every hour but their long term taste does not
+    private static final Cache<String, PersonalizationSnapshot> snapshots = CacheBuilder.newBuilder()
+            .maximumSize(10_000)
+            .build();
+    private static final Set<String> refreshing_users = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService refresh_executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "personalization-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile long refresh_after_ms = TimeUnit.HOURS.toMillis(6);
+    private static volatile long max_age_ms = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * Sets how long personalization snapshots are used for
+     *
+     * @param refresh_after_s seconds after which a snapshot is still used but refreshed in the background
+     * @param max_age_s       seconds after which a snapshot is too old to use and is fetched again before returning
+     */
+    public static void configureSnapshots(long refresh_after_s, long max_age_s) {
+        refresh_after_ms = TimeUnit.SECONDS.toMillis(refresh_after_s);
+        max_age_ms = TimeUnit.SECONDS.toMillis(max_age_s);
+    }
+
+    /**
+     * Gets the user's personalization snapshot (top artists, top tracks, and the genres of the top tracks' artists).
+     * A cached snapshot is returned right away, and if it is older than the refresh interval a new one is fetched in
+     * the background for the next request. Only a missing or expired snapshot is fetched before returning.
+     * <p>
+     * The background refresh outlives the request, whose access token may expire or be revoked in the meantime, so it
+     * refreshes its own access token from the user's refresh token instead of reusing the request's.
+     *
+     * @param spotify_api SpotifyApi object that has been built with the current user's access token
+     * @param user_id     id of the current user
+     * @return the user's personalization snapshot
+     * @throws GetUsersTopArtistsRequestException if an exception was thrown fetching the user's top artists
+     * @throws GetUsersTopTracksRequestException  if an exception was thrown fetching the user's top tracks
+     * @throws GetSeveralArtistsException         if an exception was thrown fetching the top tracks' artists
+     */
+    public static PersonalizationSnapshot getPersonalizationSnapshot(SpotifyApi spotify_api, String user_id)
+            throws GetUsersTopArtistsRequestException, GetUsersTopTracksRequestException, GetSeveralArtistsException {
+
+        PersonalizationSnapshot snapshot = snapshots.getIfPresent(user_id);
+
+        if (snapshot == null || snapshot.getAgeMs() > max_age_ms) {
+            snapshot = fetchPersonalizationSnapshot(spotify_api);
+            snapshots.put(user_id, snapshot);
+
+            return snapshot;
+        }
+
+        if (snapshot.getAgeMs() > refresh_after_ms && refreshing_users.add(user_id)) {
+            refresh_executor.execute(() -> {
+                try {
+                    snapshots.put(user_id, fetchPersonalizationSnapshot(withRefreshedToken(spotify_api)));
+                } catch (Exception ex) {
+                    System.out.println("Could not refresh personalization snapshot: " + ex.getMessage());
+                } finally {
+                    refreshing_users.remove(user_id);
+                }
+            });
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Builds a SpotifyApi of its own for a background refresh, with an access token freshly exchanged for the user's
+     * refresh token
+     *
+     * @param spotify_api SpotifyApi object of the request that found the snapshot stale
+     * @return new SpotifyApi object with a fresh access token for the same user
+     * @throws IOException            if the request has no refresh token, or the exchange failed
+     * @throws SpotifyWebApiException if Spotify refused the refresh token
+     * @throws ParseException         if the response could not be parsed
+     */
+    private static SpotifyApi withRefreshedToken(SpotifyApi spotify_api)
+            throws IOException, SpotifyWebApiException, ParseException {
+
+        if (spotify_api.getRefreshToken() == null) throw new IOException("no refresh token to refresh with");
+
+        SpotifyApi refresh_api = new SpotifyApi.Builder()
+                .setClientId(spotify_api.getClientId())
+                .setClientSecret(spotify_api.getClientSecret())
+                .setRedirectUri(spotify_api.getRedirectURI())
+                .setHttpManager(spotify_api.getHttpManager())
+                .setRefreshToken(spotify_api.getRefreshToken())
+                .build();
+
+        AuthorizationCodeCredentials credentials =
+                RequestGovernor.execute(refresh_api.authorizationCodeRefresh().build());
+        refresh_api.setAccessToken(credentials.getAccessToken());
+
+        return refresh_api;
+    }
+
+    /**
+     * Fetches the user's top artists and tracks, and the genres of every artist on a top track (resolved through the
+     * shared artist genre cache, so at most one batched request per 50 unknown artists)
+     *
+     * @param spotify_api SpotifyApi object that has been built with the current user's access token
+     * @return new personalization snapshot
+     * @throws GetUsersTopArtistsRequestException if an exception was thrown fetching the user's top artists
+     * @throws GetUsersTopTracksRequestException  if an exception was thrown fetching the user's top tracks
+     * @throws GetSeveralArtistsException         if an exception was thrown fetching the top tracks' artists
+     */
+    private static PersonalizationSnapshot fetchPersonalizationSnapshot(SpotifyApi spotify_api)
+            throws GetUsersTopArtistsRequestException, GetUsersTopTracksRequestException, GetSeveralArtistsException {
+
+        Artist[] top_artists = getUsersTopArtists(spotify_api);
+        Track[] top_tracks = getUsersTopTracks(spotify_api);
+
+        // Top artists come with their genres, so they never need to be fetched again
+        for (Artist artist : top_artists) ArtistUtilities.cacheGenres(artist);
+
+        LinkedHashSet<String> artist_ids = new LinkedHashSet<>();
+        for (Track track : top_tracks) {
+            for (ArtistSimplified artist : track.getArtists()) artist_ids.add(artist.getId());
+        }
+
+        Map<String, String[]> artist_genres = ArtistUtilities.getArtistGenres(spotify_api, artist_ids);
+
+        return new PersonalizationSnapshot(top_artists, top_tracks, artist_genres, System.currentTimeMillis());
+    }
+
     /**
      * Gets all the user's top artists
      * @param spotify_api SpotifyApi object that has been built with the current user's access token
@@ -23,7 +165,7 @@ public class PersonalizationUtilities {
             GetUsersTopArtistsRequest getUsersTopArtistsRequest =
                     spotify_api.getUsersTopArtists().time_range("long_term").build();
 
-            Paging<Artist> artistPaging = getUsersTopArtistsRequest.execute();
+            Paging<Artist> artistPaging = RequestGovernor.execute(getUsersTopArtistsRequest);
 
             return artistPaging.getItems();
 
@@ -39,7 +181,7 @@ public class PersonalizationUtilities {
             GetUsersTopArtistsRequest getUsersTopArtistsRequest =
                     spotify_api.getUsersTopArtists().limit(limit).time_range("long_term").build();
 
-            Paging<Artist> artistPaging = getUsersTopArtistsRequest.execute();
+            Paging<Artist> artistPaging = RequestGovernor.execute(getUsersTopArtistsRequest);
 
             return artistPaging.getItems();
 
@@ -62,7 +204,7 @@ public class PersonalizationUtilities {
             GetUsersTopTracksRequest getUsersTopTracksRequest =
                     spotify_api.getUsersTopTracks().time_range("long_term").build();
 
-            Paging<Track> trackPaging = getUsersTopTracksRequest.execute();
+            Paging<Track> trackPaging = RequestGovernor.execute(getUsersTopTracksRequest);
 
             return trackPaging.getItems();
 
@@ -78,7 +220,7 @@ public class PersonalizationUtilities {
             GetUsersTopTracksRequest getUsersTopTracksRequest =
                     spotify_api.getUsersTopTracks().limit(limit).time_range("long_term").build();
 
-            Paging<Track> trackPaging = getUsersTopTracksRequest.execute();
+            Paging<Track> trackPaging = RequestGovernor.execute(getUsersTopTracksRequest);
 
             return trackPaging.getItems();
 
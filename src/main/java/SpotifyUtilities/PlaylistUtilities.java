@@ -58,7 +58,7 @@ public class PlaylistUtilities {
                     .description(description)
                     .build();
 
-            return createPlaylistRequest.execute();
+            return RequestGovernor.execute(createPlaylistRequest);
 
         } catch (Exception ex) {
 
@@ -86,7 +86,7 @@ public class PlaylistUtilities {
             AddItemsToPlaylistRequest addItemsToPlaylistRequest =
                     spotify_api.addItemsToPlaylist(playlist_id, uris).build();
 
-            snapshotResult = addItemsToPlaylistRequest.execute();
+            snapshotResult = RequestGovernor.execute(addItemsToPlaylistRequest);
 
         } catch (Exception ex) {
 
@@ -109,7 +109,7 @@ public class PlaylistUtilities {
             GetListOfCurrentUsersPlaylistsRequest getListOfCurrentUsersPlaylistsRequest =
                     spotify_api.getListOfCurrentUsersPlaylists().build();
 
-            playlists = getListOfCurrentUsersPlaylistsRequest.execute();
+            playlists = RequestGovernor.execute(getListOfCurrentUsersPlaylistsRequest);
 
             return playlists.getItems();
 
@@ -133,7 +133,7 @@ public class PlaylistUtilities {
             GetListOfCurrentUsersPlaylistsRequest getListOfCurrentUsersPlaylistsRequest =
                     spotify_api.getListOfCurrentUsersPlaylists().limit(limit).build();
 
-            Paging<PlaylistSimplified> playlists = getListOfCurrentUsersPlaylistsRequest.execute();
+            Paging<PlaylistSimplified> playlists = RequestGovernor.execute(getListOfCurrentUsersPlaylistsRequest);
 
             return playlists.getItems();
 
@@ -156,7 +156,7 @@ public class PlaylistUtilities {
         try {
             GetPlaylistRequest getPlaylistRequest = spotify_api.getPlaylist(playlist_id).build();
 
-            return getPlaylistRequest.execute();
+            return RequestGovernor.execute(getPlaylistRequest);
 
         }catch (Exception ex){
 
@@ -177,7 +177,7 @@ public class PlaylistUtilities {
         try{
             GetPlaylistsItemsRequest getPlaylistsItemsRequest = spotify_api.getPlaylistsItems(playlist_id).build();
 
-            Paging<PlaylistTrack> playlistTrackPaging = getPlaylistsItemsRequest.execute();
+            Paging<PlaylistTrack> playlistTrackPaging = RequestGovernor.execute(getPlaylistsItemsRequest);
 
             return playlistTrackPaging.getItems();
 
@@ -0,0 +1,193 @@
+package SpotifyUtilities;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import org.apache.hc.client5.http.classic.methods.HttpDelete;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.classic.methods.HttpPut;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.impl.cache.CacheConfig;
+import org.apache.hc.client5.http.impl.cache.CachingHttpClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.pool.PoolStats;
+import se.michaelthelin.spotify.IHttpManager;
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import se.michaelthelin.spotify.exceptions.detailed.*;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Http manager shared by every SpotifyApi object the server builds. SpotifyHttpManager keeps HttpClient's default
+ * connection pool (5 connections per host) and has no setting to raise it, so every user, job worker and generator
+ * subtask would queue for the same 5 sockets to api.spotify.com. This sends the requests through a pool whose size is
+ * configurable (see ServerSettings), and otherwise behaves like SpotifyHttpManager: GETs go through a private http
+ * cache, and error responses are thrown as the same SpotifyWebApiExceptions (RequestGovernor relies on the 429's
+ * Retry-After).
+ */
+public class PooledHttpManager implements IHttpManager {
+
+    private static final int cache_max_entries = 1_000; // same as SpotifyHttpManager
+    private static final int cache_max_object_size = 8_192;
+
+    private final PoolingHttpClientConnectionManager connection_manager;
+    private final CloseableHttpClient http_client;
+    private final CloseableHttpClient caching_http_client;
+
+    /**
+     * @param max_connections          most connections open at once across all hosts
+     * @param max_connections_per_host most connections open at once to a single host (nearly all requests go to
+     *                                 api.spotify.com, so this is what usually limits)
+     * @throws IllegalArgumentException if either is below one
+     */
+    public PooledHttpManager(int max_connections, int max_connections_per_host) {
+        if (max_connections < 1 || max_connections_per_host < 1) {
+            throw new IllegalArgumentException("connection limits must be at least 1");
+        }
+
+        connection_manager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(max_connections)
+                .setMaxConnPerRoute(Math.min(max_connections_per_host, max_connections))
+                .build();
+
+        // Both clients lease from the same pool, so neither may shut it down on its own
+        http_client = HttpClients.custom()
+                .setConnectionManager(connection_manager)
+                .setConnectionManagerShared(true)
+                .disableContentCompression()
+                .build();
+
+        caching_http_client = CachingHttpClients.custom()
+                .setCacheConfig(CacheConfig.custom()
+                        .setMaxCacheEntries(cache_max_entries)
+                        .setMaxObjectSize(cache_max_object_size)
+                        .setSharedCache(false)
+                        .build())
+                .setConnectionManager(connection_manager)
+                .setConnectionManagerShared(true)
+                .disableContentCompression()
+                .build();
+    }
+
+    @Override
+    public String get(URI uri, Header[] headers) throws IOException, SpotifyWebApiException, ParseException {
+        HttpGet request = new HttpGet(uri);
+        request.setHeaders(headers);
+
+        return execute(caching_http_client, request);
+    }
+
+    @Override
+    public String post(URI uri, Header[] headers, HttpEntity body)
+            throws IOException, SpotifyWebApiException, ParseException {
+        HttpPost request = new HttpPost(uri);
+        request.setHeaders(headers);
+        request.setEntity(body);
+
+        return execute(http_client, request);
+    }
+
+    @Override
+    public String put(URI uri, Header[] headers, HttpEntity body)
+            throws IOException, SpotifyWebApiException, ParseException {
+        HttpPut request = new HttpPut(uri);
+        request.setHeaders(headers);
+        request.setEntity(body);
+
+        return execute(http_client, request);
+    }
+
+    @Override
+    public String delete(URI uri, Header[] headers, HttpEntity body)
+            throws IOException, SpotifyWebApiException, ParseException {
+        HttpDelete request = new HttpDelete(uri);
+        request.setHeaders(headers);
+        request.setEntity(body);
+
+        return execute(http_client, request);
+    }
+
+    /**
+     * @return connections currently in use, idle in the pool, and requests waiting for one
+     */
+    public PoolStats getPoolStats() {
+        return connection_manager.getTotalStats();
+    }
+
+    /**
+     * Sends the request and reads its body, the connection goes back to the pool once the response is closed
+     *
+     * @param client  client to send the request with
+     * @param request request to send
+     * @return body of a successful response
+     * @throws SpotifyWebApiException if Spotify answered with an error status
+     */
+    private String execute(CloseableHttpClient client, HttpUriRequestBase request)
+            throws IOException, SpotifyWebApiException, ParseException {
+
+        try (CloseableHttpResponse response = client.execute(request)) {
+            String body = response.getEntity() == null ? null : EntityUtils.toString(response.getEntity(), "UTF-8");
+
+            throwIfError(response, body);
+            return body;
+        }
+    }
+
+    /**
+     * Throws the same exceptions SpotifyHttpManager does for an error status, with Spotify's error message if the body
+     * has one
+     *
+     * @param response response to check
+     * @param body     body of the response, may be null
+     * @throws SpotifyWebApiException if the response has an error status
+     */
+    private static void throwIfError(CloseableHttpResponse response, String body) throws SpotifyWebApiException {
+        String message = response.getReasonPhrase();
+
+        if (body != null && !body.isEmpty()) {
+            try {
+                JsonElement json = JsonParser.parseString(body);
+
+                if (json.isJsonObject() && json.getAsJsonObject().has("error")) {
+                    JsonObject json_object = json.getAsJsonObject();
+                    JsonElement error = json_object.get("error");
+
+                    if (json_object.has("error_description")) {
+                        message = json_object.get("error_description").getAsString();
+                    } else if (error.isJsonObject() && error.getAsJsonObject().has("message")) {
+                        message = error.getAsJsonObject().get("message").getAsString();
+                    }
+                }
+            } catch (JsonSyntaxException ignored) {
+                // Not json, keep the reason phrase
+            }
+        }
+
+        switch (response.getCode()) {
+            case 400 -> throw new BadRequestException(message);
+            case 401 -> throw new UnauthorizedException(message);
+            case 403 -> throw new ForbiddenException(message);
+            case 404 -> throw new NotFoundException(message);
+            case 429 -> {
+                Header retry_after = response.getFirstHeader("Retry-After");
+
+                if (retry_after == null) throw new TooManyRequestsException(message);
+                throw new TooManyRequestsException(message, Integer.parseInt(retry_after.getValue()));
+            }
+            case 500 -> throw new InternalServerErrorException(message);
+            case 502 -> throw new BadGatewayException(message);
+            case 503 -> throw new ServiceUnavailableException(message);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package SpotifyUtilities;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import se.michaelthelin.spotify.model_objects.specification.Recommendations;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches recommendation responses so a query we answered seconds ago (for another user, or for a retry in the same
+ * generation) does not cost another round-trip to Spotify.
+ * <p>
+ * Queries are cached by a quantized {@link RecommendationKey}: tempos are rounded to the nearest tempo_step and
+ * energies to the nearest energy_step, so queries that are "close enough" share an entry. Entries are dropped
+ * max_age_s seconds after they were fetched, and the least recently used entries are dropped once there are more
+ * than max_entries.
+ * <p>
+ * To change how close is close enough, or how old is too old, call {@link #configure(float, float, long, long)}
+ * before the server starts (see SPOTIFY_CACHE_* in ServerSettings). Setting either step to 0 turns quantizing off,
+ * and setting max_entries to 0 turns the cache off.
+ */
+public class RecommendationCache {
+
+    private static volatile float tempo_step = 2f;
+    private static volatile float energy_step = .02f;
+    private static volatile Cache<RecommendationKey, Recommendations> cache = buildCache(2_000, 600);
+
+    /**
+     * Rebuilds the cache with the provided settings (any cached entries are dropped)
+     *
+     * @param tempo_step  tempos (bpm) are rounded to the nearest multiple of this before being used as a key
+     * @param energy_step energies are rounded to the nearest multiple of this before being used as a key
+     * @param max_entries maximum number of cached responses
+     * @param max_age_s   seconds a response is cached for after it was fetched
+     */
+    public static void configure(float tempo_step, float energy_step, long max_entries, long max_age_s) {
+        RecommendationCache.tempo_step = tempo_step;
+        RecommendationCache.energy_step = energy_step;
+        RecommendationCache.cache = buildCache(max_entries, max_age_s);
+    }
+
+    /**
+     * @param max_entries maximum number of cached responses
+     * @param max_age_s   seconds a response is cached for after it was fetched
+     * @return new empty cache
+     */
+    private static Cache<RecommendationKey, Recommendations> buildCache(long max_entries, long max_age_s) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(max_entries)
+                .expireAfterWrite(max_age_s, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param key exact key of the query
+     * @return cached response for a query close enough to the provided one, null if there is none
+     */
+    static Recommendations get(RecommendationKey key) {
+        return cache.getIfPresent(key.quantize(tempo_step, energy_step));
+    }
+
+    /**
+     * @param key             exact key of the query
+     * @param recommendations response to the query, it must not be altered after being cached
+     */
+    static void put(RecommendationKey key, Recommendations recommendations) {
+        cache.put(key.quantize(tempo_step, energy_step), recommendations);
+    }
+
+    /**
+     * @return hit, miss, and eviction counts of the cache
+     */
+    public static CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return number of responses currently cached
+     */
+    public static long getSize() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,347 @@
+package SpotifyUtilities;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import se.michaelthelin.spotify.model_objects.specification.Recommendations;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local candidate engine built from every playable track Spotify has recommended to us. Most recommendation queries
+ * ask for "N playable tracks for these seeds with tempo in [a, b] and energy in [c, d]", which can be answered from
+ * tracks we have already seen for the same seeds without going to Spotify.
+ * <p>
+ * Tracks are grouped by seeds (genres, artists, tracks) and market. Each group is a set of columns sorted by tempo,
+ * so a query is a binary search for the tempo range followed by a scan of just the tracks in it. A recommended track
+ * is only known to be within the tempo and energy range it was recommended for, unless its audio features have been
+ * fetched, so every track is stored as a value and the spread around it the real value is known to be in. A track
+ * only answers a query if its whole spread fits in the queried range. When a track is recommended again after its
+ * features were fetched its exact values replace the range.
+ * <p>
+ * Groups are rebuilt (copy on write) when new tracks arrive, so queries never lock. At most max_tracks_per_group
+ * tracks are kept per group (once a group is full the tracks recommended least recently make room, whatever their
+ * tempo) and at most max_groups groups are kept, each for max_age_s seconds after it last grew.
+ */
+public class RecommendationIndex {
+
+    /**
+     * Tracks recommended for one set of seeds in one market, sorted by tempo
+     *
+     * @param tracks        the tracks
+     * @param tempo         tempo of each track, or the middle of the range it was recommended for
+     * @param tempo_spread  how far the real tempo can be from tempo, 0 if it is exact
+     * @param energy        energy of each track, or the middle of the range it was recommended for
+     * @param energy_spread how far the real energy can be from energy, 0 if it is exact
+     * @param duration_ms   duration of each track in milliseconds
+     * @param recommended   when each track was last recommended, as a sequence number (higher is more recent)
+     */
+    private record TrackColumns(TrackSimplified[] tracks, float[] tempo, float[] tempo_spread, float[] energy,
+                                float[] energy_spread, int[] duration_ms, long[] recommended) {
+
+        static final TrackColumns EMPTY = new TrackColumns(new TrackSimplified[0], new float[0], new float[0],
+                new float[0], new float[0], new int[0], new long[0]);
+
+        int size() {
+            return tracks.length;
+        }
+
+        /**
+         * @param min_tempo min tempo to find
+         * @return index of the first track with a tempo at or above min_tempo
+         */
+        int lowerBound(float min_tempo) {
+            int low = 0;
+            int high = tempo.length;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (tempo[middle] < min_tempo) low = middle + 1;
+                else high = middle;
+            }
+
+            return low;
+        }
+    }
+
+    // Slack on the spread check, so float rounding of the middle and spread (.5 - .1 < .4) can not keep a track from
+    // answering the very range it was recommended for
+    private static final float spread_tolerance = 1e-4f;
+
+    private static volatile int max_tracks_per_group = 2_000;
+    private static volatile Cache<String, TrackColumns> groups = buildGroups(500, 6 * 60 * 60);
+
+    private static final AtomicLong recommendation_sequence = new AtomicLong(); // orders the tracks by recency
+    private static final AtomicLong local_answers = new AtomicLong();
+    private static final AtomicLong topped_up_answers = new AtomicLong();
+
+    /**
+     * Rebuilds the index with the provided settings (any indexed tracks are dropped)
+     *
+     * @param max_groups           maximum number of seed/market groups kept, 0 turns the index off
+     * @param max_tracks_per_group maximum number of tracks kept per group
+     * @param max_age_s            seconds a group is kept after it last grew
+     */
+    public static void configure(long max_groups, int max_tracks_per_group, long max_age_s) {
+        RecommendationIndex.max_tracks_per_group = max_tracks_per_group;
+        RecommendationIndex.groups = buildGroups(max_groups, max_age_s);
+    }
+
+    private static Cache<String, TrackColumns> buildGroups(long max_groups, long max_age_s) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(max_groups)
+                .expireAfterWrite(max_age_s, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Finds indexed tracks that satisfy the query, preferring the ones closest to its target tempo
+     *
+     * @param args arguments of the recommendation query
+     * @return up to args.limit() tracks that satisfy the query (in no particular order), empty if none do
+     */
+    public static TrackSimplified[] findTracks(RecommendationArguments args) {
+        TrackColumns columns = groups.getIfPresent(groupKey(args));
+        if (columns == null) return new TrackSimplified[0];
+
+        boolean has_energy = args.max_energy() > 0;
+        float target = args.target_tempo() > 0 ? args.target_tempo() : (args.min_tempo() + args.max_tempo()) / 2;
+
+        int[] matches = new int[columns.size()];
+        int num_matches = 0;
+
+        for (int index = columns.lowerBound(args.min_tempo());
+             index < columns.size() && columns.tempo[index] <= args.max_tempo(); index++) {
+
+            if (columns.tempo[index] - columns.tempo_spread[index] < args.min_tempo() - spread_tolerance) continue;
+            if (columns.tempo[index] + columns.tempo_spread[index] > args.max_tempo() + spread_tolerance) continue;
+
+            if (has_energy) {
+                if (columns.energy[index] - columns.energy_spread[index] < args.min_energy() - spread_tolerance) {
+                    continue;
+                }
+                if (columns.energy[index] + columns.energy_spread[index] > args.max_energy() + spread_tolerance) {
+                    continue;
+                }
+            }
+
+            matches[num_matches++] = index;
+        }
+
+        // The matches are sorted by tempo, so the ones closest to the target are found by growing a window from it
+        int num_results = Math.min(args.limit(), num_matches);
+        TrackSimplified[] results = new TrackSimplified[num_results];
+
+        int high = 0;
+        while (high < num_matches && columns.tempo[matches[high]] < target) high++;
+        int low = high - 1;
+
+        for (int result = 0; result < num_results; result++) {
+            boolean take_low = high >= num_matches || (low >= 0
+                    && target - columns.tempo[matches[low]] <= columns.tempo[matches[high]] - target);
+
+            results[result] = columns.tracks[matches[take_low ? low-- : high++]];
+        }
+
+        return results;
+    }
+
+    /**
+     * Answers the query from the index if it holds enough tracks, otherwise tops the indexed tracks up with the
+     * Spotify response to the query
+     *
+     * @param indexed_tracks tracks found in the index for the query
+     * @param args           arguments of the query
+     * @param fetch          makes the query to Spotify (which indexes the tracks it returns)
+     * @return Recommendations with up to args.limit() tracks, the indexed tracks first
+     * @throws E if the query to Spotify fails
+     */
+    public static <E extends Exception> Recommendations answer(TrackSimplified[] indexed_tracks,
+                                                               RecommendationArguments args,
+                                                               SingleFlight.Call<Recommendations, E> fetch) throws E {
+
+        if (indexed_tracks.length >= args.limit()) {
+            local_answers.incrementAndGet();
+            return new Recommendations.Builder().setTracks(indexed_tracks).build();
+        }
+
+        Recommendations fetched = fetch.execute();
+        if (indexed_tracks.length == 0 || fetched.getTracks() == null) return fetched;
+
+        topped_up_answers.incrementAndGet();
+
+        HashMap<String, TrackSimplified> merged = new HashMap<>();
+        TrackSimplified[] tracks = Arrays.copyOf(indexed_tracks, args.limit());
+        int num_tracks = indexed_tracks.length;
+
+        for (TrackSimplified track : indexed_tracks) merged.put(track.getId(), track);
+
+        for (TrackSimplified track : fetched.getTracks()) {
+            if (num_tracks == tracks.length) break;
+            if (merged.putIfAbsent(track.getId(), track) == null) tracks[num_tracks++] = track;
+        }
+
+        return new Recommendations.Builder()
+                .setSeeds(fetched.getSeeds())
+                .setTracks(Arrays.copyOf(tracks, num_tracks))
+                .build();
+    }
+
+    /**
+     * Indexes tracks recommended for a query made through BrowsingUtilities.getRecommendations again, so the ones
+     * whose audio features have been fetched since are refined to their exact values
+     *
+     * @param args            arguments of the query
+     * @param recommendations Spotify's response to the query
+     */
+    public static void refine(RecommendationArguments args, Recommendations recommendations) {
+        add(RecommendationKey.forRecommendations(args), recommendations);
+    }
+
+    /**
+     * Indexes the playable tracks Spotify recommended for a query
+     *
+     * @param key             key of the query the tracks were recommended for
+     * @param recommendations Spotify's response to the query
+     */
+    static void add(RecommendationKey key, Recommendations recommendations) {
+        if (key.market() == null || recommendations.getTracks() == null) return;
+
+        TrackSimplified[] playable_tracks = Arrays.stream(recommendations.getTracks())
+                .filter(track -> Boolean.TRUE.equals(track.getIsPlayable()))
+                .toArray(TrackSimplified[]::new);
+
+        if (playable_tracks.length == 0) return;
+
+        groups.asMap().compute(groupKey(key.seed_genres(), key.seed_artists(), key.seed_tracks(), key.market()),
+                (group_key, columns) -> merge(columns == null ? TrackColumns.EMPTY : columns, playable_tracks, key));
+    }
+
+    /**
+     * @param columns current columns of the group
+     * @param tracks  playable tracks recommended for the query
+     * @param key     key of the query, whose ranges bound the tracks' tempo and energy
+     * @return new columns holding both, sorted by tempo (the least recently recommended tracks are dropped once the
+     * group is full)
+     */
+    private static TrackColumns merge(TrackColumns columns, TrackSimplified[] tracks, RecommendationKey key) {
+        HashMap<String, Integer> known_ids = new HashMap<>();
+        for (int index = 0; index < columns.size(); index++) known_ids.put(columns.tracks[index].getId(), index);
+
+        long sequence = recommendation_sequence.incrementAndGet();
+        int capacity = columns.size() + tracks.length;
+        TrackSimplified[] merged_tracks = new TrackSimplified[capacity];
+        float[][] values = new float[4][capacity]; // tempo, tempo spread, energy, energy spread
+        int[] durations = new int[capacity];
+        long[] recommended = new long[capacity];
+        int size = 0;
+
+        // Tracks already indexed by range whose exact features have been fetched since
+        HashMap<Integer, TrackFeatures> refined = new HashMap<>();
+        // Tracks already indexed that were recommended again, so they count as recent
+        HashSet<Integer> recommended_again = new HashSet<>();
+
+        for (TrackSimplified track : tracks) {
+            Integer known_index = known_ids.get(track.getId());
+            TrackFeatures features = AudioFeaturesCache.get(track.getId());
+
+            if (known_index != null) {
+                if (known_index < 0) continue; // twice in the same response
+
+                recommended_again.add(known_index);
+                if (features != null && columns.tempo_spread[known_index] > 0) refined.put(known_index, features);
+                continue;
+            }
+            known_ids.put(track.getId(), -1);
+
+            boolean has_energy = key.max_energy() > 0;
+
+            merged_tracks[size] = track;
+            values[0][size] = features != null ? features.tempo() : (key.min_tempo() + key.max_tempo()) / 2;
+            values[1][size] = features != null ? 0 : (key.max_tempo() - key.min_tempo()) / 2;
+            values[2][size] = features != null ? features.energy()
+                    : has_energy ? (key.min_energy() + key.max_energy()) / 2 : .5f;
+            values[3][size] = features != null ? 0 : has_energy ? (key.max_energy() - key.min_energy()) / 2 : .5f;
+            durations[size] = track.getDurationMs();
+            recommended[size] = sequence;
+            size++;
+        }
+
+        if (size == 0 && recommended_again.isEmpty()) return columns;
+
+        for (int index = 0; index < columns.size(); index++) {
+            TrackFeatures features = refined.get(index);
+
+            merged_tracks[size] = columns.tracks[index];
+            values[0][size] = features != null ? features.tempo() : columns.tempo[index];
+            values[1][size] = features != null ? 0 : columns.tempo_spread[index];
+            values[2][size] = features != null ? features.energy() : columns.energy[index];
+            values[3][size] = features != null ? 0 : columns.energy_spread[index];
+            durations[size] = columns.duration_ms[index];
+            recommended[size] = recommended_again.contains(index) ? sequence : columns.recommended[index];
+            size++;
+        }
+
+        Integer[] order = new Integer[size];
+        for (int index = 0; index < size; index++) order[index] = index;
+
+        // Once the group is full the least recently recommended tracks make room, whatever their tempo
+        if (size > max_tracks_per_group) {
+            Arrays.sort(order, (one, two) -> Long.compare(recommended[two], recommended[one]));
+            order = Arrays.copyOf(order, max_tracks_per_group);
+        }
+        Arrays.sort(order, (one, two) -> Float.compare(values[0][one], values[0][two]));
+
+        TrackColumns sorted = new TrackColumns(new TrackSimplified[order.length], new float[order.length],
+                new float[order.length], new float[order.length], new float[order.length], new int[order.length],
+                new long[order.length]);
+
+        for (int index = 0; index < order.length; index++) {
+            int from = order[index];
+            sorted.tracks[index] = merged_tracks[from];
+            sorted.tempo[index] = values[0][from];
+            sorted.tempo_spread[index] = values[1][from];
+            sorted.energy[index] = values[2][from];
+            sorted.energy_spread[index] = values[3][from];
+            sorted.duration_ms[index] = durations[from];
+            sorted.recommended[index] = recommended[from];
+        }
+
+        return sorted;
+    }
+
+    private static String groupKey(RecommendationArguments args) {
+        return groupKey(args.seed_genres(), args.seed_artists(), args.seed_tracks(), args.market());
+    }
+
+    private static String groupKey(String seed_genres, String seed_artists, String seed_tracks, Object market) {
+        return (seed_genres == null ? "" : seed_genres) + "|" + (seed_artists == null ? "" : seed_artists) + "|"
+                + (seed_tracks == null ? "" : seed_tracks) + "|" + market;
+    }
+
+    /**
+     * @return number of queries answered without going to Spotify
+     */
+    public static long getLocalAnswers() {
+        return local_answers.get();
+    }
+
+    /**
+     * @return number of queries answered partly from the index and topped up by Spotify
+     */
+    public static long getToppedUpAnswers() {
+        return topped_up_answers.get();
+    }
+
+    /**
+     * @return number of seed/market groups currently indexed
+     */
+    public static long getGroupCount() {
+        return groups.size();
+    }
+}
@@ -0,0 +1,85 @@
+package SpotifyUtilities;
+
+import com.neovisionaries.i18n.CountryCode;
+
+/**
+ * Identifies a recommendation query by everything that shapes its result, leaving out the user's SpotifyApi.
+ * Two queries with equal keys get the same tracks back from Spotify no matter who makes them.
+ * <p>
+ * {@link #endpoint} endpoint:     which BrowsingUtilities query was made (arguments it ignores are left out)<p>
+ * The remaining components mirror {@link RecommendationArguments}
+ */
+public record RecommendationKey(
+        String endpoint,
+        int limit,
+        String seed_genres,
+        String seed_artists,
+        String seed_tracks,
+        float min_tempo,
+        float max_tempo,
+        float target_tempo,
+        float min_energy,
+        float max_energy,
+        float energy,
+        CountryCode market
+) {
+
+    /**
+     * Rounds the tempo and energy components to the nearest multiple of the provided steps, so queries that are close
+     * to each other get the same key
+     *
+     * @param tempo_step  step tempos are rounded to, 0 leaves them unchanged
+     * @param energy_step step energies are rounded to, 0 leaves them unchanged
+     * @return quantized copy of this key
+     */
+    RecommendationKey quantize(float tempo_step, float energy_step) {
+        return new RecommendationKey(endpoint, limit, seed_genres, seed_artists, seed_tracks,
+                round(min_tempo, tempo_step), round(max_tempo, tempo_step), round(target_tempo, tempo_step),
+                round(min_energy, energy_step), round(max_energy, energy_step), round(energy, energy_step), market);
+    }
+
+    /**
+     * @param value value to round
+     * @param step  step to round to, 0 leaves the value unchanged
+     * @return value rounded to the nearest multiple of step
+     */
+    private static float round(float value, float step) {
+        if (step <= 0) return value;
+
+        return Math.round(value / step) * step;
+    }
+
+    /**
+     * Key for a query that uses every argument (see BrowsingUtilities.getRecommendations)
+     *
+     * @param args arguments of the query
+     * @return key for the query
+     */
+    static RecommendationKey forRecommendations(RecommendationArguments args) {
+        return new RecommendationKey("recommendations", args.limit(), args.seed_genres(), args.seed_artists(),
+                args.seed_tracks(), args.min_tempo(), args.max_tempo(), args.target_tempo(), args.min_energy(),
+                args.max_energy(), args.energy(), args.market());
+    }
+
+    /**
+     * Key for a query that only uses genres and tempo (see BrowsingUtilities.getGenreRecommendations)
+     *
+     * @param args arguments of the query
+     * @return key for the query
+     */
+    static RecommendationKey forGenreRecommendations(RecommendationArguments args) {
+        return new RecommendationKey("genre", args.limit(), args.seed_genres(), null, null,
+                args.min_tempo(), args.max_tempo(), args.target_tempo(), 0, 0, 0, args.market());
+    }
+
+    /**
+     * Key for a query over a tempo range without a target (see BrowsingUtilities.getRecommendationTempoRange)
+     *
+     * @param args arguments of the query
+     * @return key for the query
+     */
+    static RecommendationKey forTempoRange(RecommendationArguments args) {
+        return new RecommendationKey("tempo_range", args.limit(), args.seed_genres(), args.seed_artists(),
+                args.seed_tracks(), args.min_tempo(), args.max_tempo(), 0, 0, 0, 0, args.market());
+    }
+}
@@ -0,0 +1,194 @@
+package SpotifyUtilities;
+
+import org.apache.hc.core5.http.ParseException;
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+import se.michaelthelin.spotify.requests.IRequest;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shared gate in front of every request the SpotifyUtilities send to Spotify. All users share one app quota, so
+ * outbound requests are spaced out with a token bucket. Callers that have to wait for a token are queued fairly
+ * (first come first served) on the bucket's lock.
+ * <p>
+ * If Spotify answers 429 Too Many Requests, no request is sent by anyone until its Retry-After has passed. The request
+ * is then retried a limited number of times, so widening loops in the generators do not hammer the API while banned.
+ * <p>
+ * Defaults can be changed with {@link #configure(double, int, int)} before the server starts.
+ */
+public class RequestGovernor {
+
+    private static final ReentrantLock bucket_lock = new ReentrantLock(true); // fair, so waiters are served in order
+
+    // Bucket state, only read or written while holding bucket_lock
+    private static double requests_per_second = 10;
+    private static int burst = 20;
+    private static double tokens = burst;
+    private static long last_refill_ns = System.nanoTime();
+
+    private static volatile int max_retries = 3;
+    private static volatile long blocked_until_ms = 0; // set from Retry-After, nothing is sent before this time
+
+    // Metrics
+    private static final AtomicInteger queue_depth = new AtomicInteger();
+    private static final AtomicLong total_requests = new AtomicLong();
+    private static final AtomicLong total_rate_limited = new AtomicLong();
+
+    /**
+     * Sets the size of the token bucket and how many times a rate limited request is retried
+     *
+     * @param requests_per_second rate tokens are added to the bucket (sustained requests per second)
+     * @param burst               maximum number of tokens in the bucket (requests that can be sent back to back)
+     * @param max_retries         times a request is retried after a 429 before its exception is thrown
+     * @throws IllegalArgumentException if the rate is not positive, the burst is below one or the retries are negative
+     *                                  (any of which would leave callers waiting for a token forever)
+     */
+    public static void configure(double requests_per_second, int burst, int max_retries) {
+        if (!(requests_per_second > 0) || Double.isInfinite(requests_per_second)) {
+            throw new IllegalArgumentException("requests_per_second must be a positive number");
+        }
+        if (burst < 1) throw new IllegalArgumentException("burst must be at least 1");
+        if (max_retries < 0) throw new IllegalArgumentException("max_retries must not be negative");
+
+        bucket_lock.lock();
+
+        try {
+            RequestGovernor.requests_per_second = requests_per_second;
+            RequestGovernor.burst = burst;
+            RequestGovernor.tokens = Math.min(tokens, burst);
+            RequestGovernor.max_retries = max_retries;
+        } finally {
+            bucket_lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a token, then executes the request. A 429 response blocks every caller for its Retry-After and the
+     * request is retried up to max_retries times.
+     *
+     * @param request request to be executed
+     * @return result of request.execute()
+     * @throws IOException            if the request failed, or the thread was interrupted while waiting for a token
+     * @throws SpotifyWebApiException if Spotify returned an error (including a 429 that outlasted the retries)
+     * @throws ParseException         if the response could not be parsed
+     */
+    public static <T> T execute(IRequest<T> request) throws IOException, SpotifyWebApiException, ParseException {
+
+        for (int attempt = 0; ; attempt++) {
+
+            acquire();
+            total_requests.incrementAndGet();
+
+            try {
+                return request.execute();
+            } catch (TooManyRequestsException ex) {
+                total_rate_limited.incrementAndGet();
+                blockFor(ex.getRetryAfter());
+
+                if (attempt >= max_retries) throw ex;
+            }
+        }
+    }
+
+    /**
+     * Waits until the current ban (if any) has passed and a token is available, then takes the token
+     *
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    private static void acquire() throws InterruptedIOException {
+        queue_depth.incrementAndGet();
+
+        try {
+            bucket_lock.lockInterruptibly();
+
+            try {
+                while (true) {
+                    long ban_ms = blocked_until_ms - System.currentTimeMillis();
+
+                    if (ban_ms > 0) {
+                        TimeUnit.MILLISECONDS.sleep(ban_ms);
+                        continue;
+                    }
+
+                    refill();
+
+                    if (tokens >= 1) {
+                        tokens--;
+                        return;
+                    }
+
+                    // Sleep just long enough for the next token, holding the lock keeps everyone else in line
+                    long wait_ns = (long) ((1 - tokens) / requests_per_second * 1_000_000_000L);
+                    TimeUnit.NANOSECONDS.sleep(Math.max(wait_ns, 1));
+                }
+            } finally {
+                bucket_lock.unlock();
+            }
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send a Spotify request");
+        } finally {
+            queue_depth.decrementAndGet();
+        }
+    }
+
+    /**
+     * Adds the tokens earned since the last refill, must be called while holding bucket_lock
+     */
+    private static void refill() {
+        long now_ns = System.nanoTime();
+
+        tokens = Math.min(burst, tokens + (now_ns - last_refill_ns) / 1_000_000_000.0 * requests_per_second);
+        last_refill_ns = now_ns;
+    }
+
+    /**
+     * Stops all requests from being sent for the provided number of seconds
+     *
+     * @param retry_after_s seconds from Spotify's Retry-After header (at least one second is used)
+     */
+    private static void blockFor(int retry_after_s) {
+        long until_ms = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Math.max(retry_after_s, 1));
+
+        synchronized (RequestGovernor.class) {
+            if (until_ms > blocked_until_ms) blocked_until_ms = until_ms;
+        }
+
+        System.out.println("Spotify rate limit hit, pausing requests for " + retry_after_s + "s");
+    }
+
+    /**
+     * @return number of callers currently waiting to send a request
+     */
+    public static int getQueueDepth() {
+        return queue_depth.get();
+    }
+
+    /**
+     * @return number of requests sent to Spotify since the server started (retries included)
+     */
+    public static long getTotalRequests() {
+        return total_requests.get();
+    }
+
+    /**
+     * @return number of 429 responses received since the server started
+     */
+    public static long getTotalRateLimited() {
+        return total_rate_limited.get();
+    }
+
+    /**
+     * @return milliseconds left until requests can be sent again after a 429, 0 if not currently blocked
+     */
+    public static long getBlockedForMs() {
+        return Math.max(0, blocked_until_ms - System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,76 @@
+package SpotifyUtilities;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces identical calls that are in flight at the same time. The first caller for a key makes the call, and any
+ * caller that asks for the same key before it finishes waits for and shares that result instead of making its own
+ * call. Nothing is kept once the call finishes, so this is not a cache.
+ * <p>
+ * Only successful results are shared. Keys identify what is asked for, not who asks, and the call runs with the first
+ * caller's credentials, so its failure (an expired token, a revoked scope) says nothing about the other callers. When
+ * the shared call fails every joined caller makes its own call instead.
+ *
+ * @param <K> key identifying identical calls, must implement equals and hashCode
+ * @param <V> result of the call
+ */
+public class SingleFlight<K, V> {
+
+    /**
+     * A call that may throw a checked exception
+     *
+     * @param <V> result of the call
+     * @param <E> checked exception the call can throw
+     */
+    @FunctionalInterface
+    public interface Call<V, E extends Exception> {
+        V execute() throws E;
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> in_flight = new ConcurrentHashMap<>();
+
+    /**
+     * Makes the call, or joins the identical call already in flight for the key
+     *
+     * @param key  key identifying the call
+     * @param call call to make if no identical call is in flight
+     * @return result of the call, shared between every caller that joined it
+     * @throws E if this caller's own call threw
+     */
+    public <E extends Exception> V execute(K key, Call<V, E> call) throws E {
+
+        CompletableFuture<V> new_call = new CompletableFuture<>();
+        CompletableFuture<V> current_call = in_flight.putIfAbsent(key, new_call);
+
+        // No identical call was in flight, so this caller makes it
+        if (current_call == null) {
+            try {
+                V result = call.execute();
+                new_call.complete(result);
+
+                return result;
+            } catch (Throwable ex) {
+                new_call.completeExceptionally(ex);
+                throw ex;
+            } finally {
+                in_flight.remove(key, new_call);
+            }
+        }
+
+        try {
+            return current_call.join();
+        } catch (CompletionException ex) {
+            // The shared call failed with someone else's credentials, so make this caller's own call
+            return call.execute();
+        }
+    }
+
+    /**
+     * @return number of distinct calls currently in flight
+     */
+    public int inFlightCount() {
+        return in_flight.size();
+    }
+}
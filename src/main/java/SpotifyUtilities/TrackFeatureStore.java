@@ -0,0 +1,471 @@
+package SpotifyUtilities;
+
+import com.neovisionaries.i18n.CountryCode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * On-disk store of what we have learned about tracks (tempo, energy, duration, and playability per market), so it
+ * survives restarts. The file is memory mapped rather than loaded, so opening it costs nothing no matter how big it is
+ * and only the pages that are used end up in memory. Writes go to the mapping and are flushed by the OS, so they
+ * survive the process being killed.
+ * <p>
+ * The file is a 32 byte header (magic, version, capacity, count) followed by capacity fixed width records. The
+ * records are an open addressing hash table: a track lives in the first free record at or after hash(id) % capacity.
+ * Once more than 70% of the records are used the records are rehashed into a temporary file with twice the capacity,
+ * which then replaces the old file (see grow).
+ * <p>
+ * Record layout (64 bytes):<p>
+ * 0:  flags (1 = used, 2 = has features)<p>
+ * 1:  length of the id<p>
+ * 2:  id (up to 22 ASCII bytes, the length of a Spotify id)<p>
+ * 24: tempo (float)<p>
+ * 28: energy (float)<p>
+ * 32: duration_ms (int)<p>
+ * 36: 7 market slots of (alpha-2 code as a short, playable byte, unused byte), 0 marks a free slot
+ * <p>
+ * Markets are stored by their ISO alpha-2 code rather than by CountryCode ordinal, as the enum comes from a library
+ * and its order may change between versions. Files written with ordinals (version 1) are discarded on open.
+ */
+public class TrackFeatureStore implements Closeable {
+
+    private static final int MAGIC = 0x48425453;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+
+    static final int RECORD_BYTES = 64;
+    private static final int FLAGS = 0;
+    private static final int ID_LENGTH = 1;
+    private static final int ID = 2;
+    private static final int MAX_ID_BYTES = 22;
+    private static final int TEMPO = 24;
+    private static final int ENERGY = 28;
+    private static final int DURATION = 32;
+    private static final int MARKETS = 36;
+    private static final int MARKET_SLOT_BYTES = 4;
+    private static final int MARKET_SLOTS = 7;
+
+    private static final byte USED = 1;
+    private static final byte HAS_FEATURES = 2;
+
+    private static final float MAX_LOAD = .7f;
+    private static final int MAX_CAPACITY = 1 << 24; // 1 GB of records, a mapping can not exceed 2 GB
+
+    private static volatile TrackFeatureStore shared;
+
+    private final Path path;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int count;
+
+    private TrackFeatureStore(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Opens (mapping, not loading) the store at the provided path, creating it if it does not exist. A file that is
+     * not a valid store is replaced with an empty one, since everything in it can be fetched again.
+     *
+     * @param path             file holding the store
+     * @param initial_capacity number of records to create a new store with (rounded up to a power of two)
+     * @return the opened store
+     * @throws IOException if the file can not be created or mapped
+     */
+    public static TrackFeatureStore open(Path path, int initial_capacity) throws IOException {
+
+        TrackFeatureStore store = new TrackFeatureStore(path);
+
+        if (Files.exists(path) && store.mapExisting()) return store;
+
+        int capacity = Integer.highestOneBit(Math.max(16, Math.min(initial_capacity, MAX_CAPACITY)) - 1) << 1;
+        store.channel = createFile(path, capacity);
+        store.buffer = mapFile(store.channel, capacity);
+        store.capacity = capacity;
+        store.count = 0;
+
+        return store;
+    }
+
+    /**
+     * @return the store used by the server, null if it is not using one
+     */
+    public static TrackFeatureStore shared() {
+        return shared;
+    }
+
+    /**
+     * Opens the store the server reads from before going to Spotify (see TRACK_STORE_PATH in ServerSettings)
+     *
+     * @param path             file holding the store
+     * @param initial_capacity number of records to create a new store with
+     * @throws IOException if the file can not be created or mapped
+     */
+    public static void openShared(Path path, int initial_capacity) throws IOException {
+        shared = open(path, initial_capacity);
+    }
+
+    /**
+     * @param track_id id of the track
+     * @return stored features of the track, null if they are not stored
+     */
+    public TrackFeatures getFeatures(String track_id) {
+        byte[] id = encodeId(track_id);
+        if (id == null) return null;
+
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(buffer, capacity, id);
+            if (slot < 0) return null;
+
+            int offset = recordOffset(slot);
+            if ((buffer.get(offset + FLAGS) & HAS_FEATURES) == 0) return null;
+
+            return new TrackFeatures(buffer.getFloat(offset + TEMPO), buffer.getFloat(offset + ENERGY),
+                    buffer.getInt(offset + DURATION));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores the features of a track, ignored if the id is too long or the store is full
+     *
+     * @param track_id id of the track
+     * @param features features of the track
+     */
+    public void putFeatures(String track_id, TrackFeatures features) {
+        byte[] id = encodeId(track_id);
+        if (id == null) return;
+
+        lock.writeLock().lock();
+        try {
+            int slot = findOrInsertSlot(id);
+            if (slot < 0) return;
+
+            int offset = recordOffset(slot);
+            buffer.putFloat(offset + TEMPO, features.tempo());
+            buffer.putFloat(offset + ENERGY, features.energy());
+            buffer.putInt(offset + DURATION, features.duration_ms());
+            buffer.put(offset + FLAGS, (byte) (buffer.get(offset + FLAGS) | HAS_FEATURES)); // marked last
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param track_id id of the track
+     * @param market   market the track was checked in
+     * @return whether the track is playable in the market, null if that is not stored
+     */
+    public Boolean getPlayable(String track_id, CountryCode market) {
+        byte[] id = encodeId(track_id);
+        if (id == null || marketCode(market) == 0) return null;
+
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(buffer, capacity, id);
+            if (slot < 0) return null;
+
+            int market_offset = findMarketSlot(recordOffset(slot), market);
+            if (market_offset < 0 || buffer.getShort(market_offset) != marketCode(market)) return null;
+
+            return buffer.get(market_offset + 2) != 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores whether a track is playable in a market. Once a track has 7 markets stored the last one is overwritten.
+     *
+     * @param track_id id of the track
+     * @param market   market the track was checked in
+     * @param playable whether the track is playable in the market
+     */
+    public void putPlayable(String track_id, CountryCode market, boolean playable) {
+        byte[] id = encodeId(track_id);
+        if (id == null || marketCode(market) == 0) return;
+
+        lock.writeLock().lock();
+        try {
+            int slot = findOrInsertSlot(id);
+            if (slot < 0) return;
+
+            int market_offset = findMarketSlot(recordOffset(slot), market);
+            if (market_offset < 0) market_offset = recordOffset(slot) + MARKETS + (MARKET_SLOTS - 1) * MARKET_SLOT_BYTES;
+
+            buffer.put(market_offset + 2, (byte) (playable ? 1 : 0));
+            buffer.putShort(market_offset, marketCode(market));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of tracks stored
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of records in the file
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Flushes the mapping to disk and closes the file
+     *
+     * @throws IOException if the file can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Maps the existing file, if it is a valid store
+     *
+     * @return true if the file was mapped, false if it is not a valid store
+     * @throws IOException if the file can not be read
+     */
+    private boolean mapExisting() throws IOException {
+        long size = Files.size(path);
+        if (size < HEADER_BYTES) return false;
+
+        FileChannel existing = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer header = existing.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        int stored_capacity = header.getInt(CAPACITY_OFFSET);
+
+        boolean valid = header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                && stored_capacity > 0 && stored_capacity <= MAX_CAPACITY && Integer.bitCount(stored_capacity) == 1
+                && size == HEADER_BYTES + (long) stored_capacity * RECORD_BYTES;
+
+        if (!valid) {
+            existing.close();
+            return false;
+        }
+
+        channel = existing;
+        buffer = mapFile(existing, stored_capacity);
+        capacity = stored_capacity;
+        count = buffer.getInt(COUNT_OFFSET);
+
+        return true;
+    }
+
+    /**
+     * Finds the record of a track, inserting an empty one (and growing the file if needed) if there is none
+     *
+     * @param id encoded id of the track
+     * @return slot of the record, -1 if the store is full
+     */
+    private int findOrInsertSlot(byte[] id) {
+        int slot = findSlot(buffer, capacity, id);
+        if (slot >= 0) return slot;
+
+        if (count + 1 > capacity * MAX_LOAD) {
+            if (!grow()) return -1;
+            slot = findSlot(buffer, capacity, id);
+        }
+
+        int free_slot = -slot - 1;
+        int offset = recordOffset(free_slot);
+        buffer.put(offset + ID_LENGTH, (byte) id.length);
+        for (int index = 0; index < id.length; index++) {
+            buffer.put(offset + ID + index, id[index]);
+        }
+        buffer.put(offset + FLAGS, USED); // marked last
+
+        count++;
+        buffer.putInt(COUNT_OFFSET, count);
+
+        return free_slot;
+    }
+
+    /**
+     * Rebuilds the file with twice the capacity, next to the current file, and swaps it in
+     *
+     * @return true if the store grew, false if it is at its maximum capacity or the new file could not be written
+     */
+    private boolean grow() {
+        if (capacity >= MAX_CAPACITY) return false;
+
+        int new_capacity = capacity * 2;
+        Path new_path = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try {
+            FileChannel new_channel = createFile(new_path, new_capacity);
+            MappedByteBuffer new_buffer = mapFile(new_channel, new_capacity);
+            byte[] record = new byte[RECORD_BYTES];
+
+            for (int slot = 0; slot < capacity; slot++) {
+                int offset = recordOffset(slot);
+                if (buffer.get(offset + FLAGS) == 0) continue;
+
+                buffer.get(offset, record);
+                int new_slot = -findSlot(new_buffer, new_capacity, readId(buffer, offset)) - 1;
+                new_buffer.put(recordOffset(new_slot), record);
+            }
+
+            new_buffer.putInt(COUNT_OFFSET, count);
+            new_buffer.force();
+            Files.move(new_path, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            channel.close();
+            channel = new_channel;
+            buffer = new_buffer;
+            capacity = new_capacity;
+
+            return true;
+
+        } catch (IOException ex) {
+            System.out.println("Could not grow the track feature store: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Probes the records for a track, starting at its hash
+     *
+     * @param buffer   mapped records
+     * @param capacity number of records (a power of two)
+     * @param id       encoded id of the track
+     * @return slot of the track's record, or -(free slot + 1) if it is not stored
+     */
+    private static int findSlot(MappedByteBuffer buffer, int capacity, byte[] id) {
+        int mask = capacity - 1;
+        int slot = hash(id) & mask;
+
+        while (true) {
+            int offset = recordOffset(slot);
+
+            if (buffer.get(offset + FLAGS) == 0) return -slot - 1;
+            if (idEquals(buffer, offset, id)) return slot;
+
+            slot = (slot + 1) & mask; // the load limit guarantees a free record
+        }
+    }
+
+    /**
+     * @param record_offset offset of the track's record
+     * @param market        market to find
+     * @return offset of the market's slot, or of the first free slot if the market is not stored, -1 if neither
+     */
+    private int findMarketSlot(int record_offset, CountryCode market) {
+        short code = marketCode(market);
+
+        for (int index = 0; index < MARKET_SLOTS; index++) {
+            int offset = record_offset + MARKETS + index * MARKET_SLOT_BYTES;
+            short stored_code = buffer.getShort(offset);
+
+            if (stored_code == code || stored_code == 0) return offset;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Creates (or truncates) a store file with an empty header
+     *
+     * @param path     file to create
+     * @param capacity number of records
+     * @return channel to the new file
+     * @throws IOException if the file can not be created
+     */
+    private static FileChannel createFile(Path path, int capacity) throws IOException {
+        FileChannel new_channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        MappedByteBuffer header = new_channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(CAPACITY_OFFSET, capacity);
+        header.putInt(COUNT_OFFSET, 0);
+
+        return new_channel;
+    }
+
+    /**
+     * @param channel  channel to a store file
+     * @param capacity number of records in the file
+     * @return read-write mapping of the whole file (extending it with empty records if needed)
+     * @throws IOException if the file can not be mapped
+     */
+    private static MappedByteBuffer mapFile(FileChannel channel, int capacity) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * RECORD_BYTES);
+    }
+
+    private static int recordOffset(int slot) {
+        return HEADER_BYTES + slot * RECORD_BYTES;
+    }
+
+    /**
+     * @param market market to encode
+     * @return the market's two letter alpha-2 code packed into a short, 0 if it has none (or is null)
+     */
+    private static short marketCode(CountryCode market) {
+        if (market == null) return 0;
+
+        String alpha_2 = market.getAlpha2();
+        if (alpha_2 == null || alpha_2.length() != 2) return 0;
+
+        return (short) ((alpha_2.charAt(0) << 8) | alpha_2.charAt(1));
+    }
+
+    /**
+     * @param track_id id of a track
+     * @return ASCII bytes of the id, null if it does not fit in a record
+     */
+    private static byte[] encodeId(String track_id) {
+        if (track_id == null || track_id.isEmpty() || track_id.length() > MAX_ID_BYTES) return null;
+
+        return track_id.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] readId(MappedByteBuffer buffer, int offset) {
+        byte[] id = new byte[buffer.get(offset + ID_LENGTH)];
+        for (int index = 0; index < id.length; index++) {
+            id[index] = buffer.get(offset + ID + index);
+        }
+        return id;
+    }
+
+    private static boolean idEquals(MappedByteBuffer buffer, int offset, byte[] id) {
+        if (buffer.get(offset + ID_LENGTH) != id.length) return false;
+
+        for (int index = 0; index < id.length; index++) {
+            if (buffer.get(offset + ID + index) != id[index]) return false;
+        }
+        return true;
+    }
+
+    private static int hash(byte[] id) {
+        int hash = 1;
+        for (byte character : id) {
+            hash = 31 * hash + character;
+        }
+        return (hash ^ (hash >>> 16)) * 0x9E3779B9;
+    }
+}
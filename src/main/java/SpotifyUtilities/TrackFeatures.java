@@ -0,0 +1,42 @@
+package SpotifyUtilities;
+
+import se.michaelthelin.spotify.model_objects.specification.AudioFeatures;
+
+/**
+ * The parts of a track's AudioFeatures that playlist generation uses, kept as primitives so caching a track costs a
+ * few bytes instead of a full AudioFeatures object.
+ * <p>
+ * {@link #tempo} tempo:             tempo of the track in bpm<p>
+ * {@link #energy} energy:           energy of the track (0 - 1)<p>
+ * {@link #duration_ms} duration_ms: duration of the track in milliseconds
+ */
+public record TrackFeatures(float tempo, float energy, int duration_ms) {
+
+    /**
+     * @param features AudioFeatures returned by Spotify
+     * @return the parts of the AudioFeatures playlist generation uses, null if Spotify left any of them out (as it
+     * does for local and unavailable tracks)
+     */
+    public static TrackFeatures of(AudioFeatures features) {
+        if (features == null || features.getTempo() == null || features.getEnergy() == null
+                || features.getDurationMs() == null) return null;
+
+        return new TrackFeatures(features.getTempo(), features.getEnergy(), features.getDurationMs());
+    }
+
+    /**
+     * Rebuilds an AudioFeatures object holding the cached parts (and the id and uri of the track)
+     *
+     * @param track_id id of the track these are the features of
+     * @return AudioFeatures with id, uri, tempo, energy, and duration set
+     */
+    public AudioFeatures toAudioFeatures(String track_id) {
+        return new AudioFeatures.Builder()
+                .setId(track_id)
+                .setUri("spotify:track:" + track_id)
+                .setTempo(tempo)
+                .setEnergy(energy)
+                .setDurationMs(duration_ms)
+                .build();
+    }
+}
@@ -3,6 +3,7 @@ package SpotifyUtilities;
 import ExceptionClasses.TrackExceptions.GetAudioFeaturesForSeveralTracksException;
 import ExceptionClasses.TrackExceptions.GetAudioFeaturesForTrackException;
 import ExceptionClasses.TrackExceptions.GetTrackException;
+import com.neovisionaries.i18n.CountryCode;
 import org.jetbrains.annotations.Contract;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.model_objects.specification.AudioFeatures;
@@ -12,10 +13,14 @@ import se.michaelthelin.spotify.requests.data.tracks.GetAudioFeaturesForSeveralT
 import se.michaelthelin.spotify.requests.data.tracks.GetAudioFeaturesForTrackRequest;
 import se.michaelthelin.spotify.requests.data.tracks.GetTrackRequest;
 
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 
 public class TrackUtilities {
     private static final String[] ids = new String[]{"01iyCAUm8EvOFqVWYJ3dVX"};
+    private static final int MAX_FEATURES_PER_REQUEST = 100;
 
     // Compares tracks by duration
     public static final Comparator<TrackSimplified> duration_comparator =
@@ -38,22 +43,84 @@ public class TrackUtilities {
 
 
     /**
-     * Gets the audio features of several tracks (limit of 100)
+     * Gets the audio features of several tracks. Features already in the AudioFeaturesCache are not fetched again,
+     * and the rest are fetched 100 at a time (the endpoint's limit) and cached.
      *
      * @param spotify_api SpotifyApi object linked to the users account
      * @param track_ids   ids of the tracks to query AudioFeature information on
-     * @return AudioFeatures array
+     * @return AudioFeatures array in the same order as track_ids, null for tracks Spotify has no features for
      * @throws GetAudioFeaturesForSeveralTracksException if an error occurs when accessing the spotify endpoint
      */
     public static AudioFeatures[] getAudioFeaturesForSeveralTracks(SpotifyApi spotify_api, String[] track_ids)
             throws GetAudioFeaturesForSeveralTracksException {
 
+        AudioFeatures[] features = new AudioFeatures[track_ids.length];
+        LinkedHashSet<String> missing_ids = new LinkedHashSet<>();
+
+        for (int index = 0; index < track_ids.length; index++) {
+            TrackFeatures cached = AudioFeaturesCache.get(track_ids[index]);
+
+            if (cached != null) features[index] = cached.toAudioFeatures(track_ids[index]);
+            else missing_ids.add(track_ids[index]);
+        }
+
+        if (missing_ids.isEmpty()) return features;
+
+        HashMap<String, AudioFeatures> fetched = new HashMap<>();
+        String[] ids_to_fetch = missing_ids.toArray(new String[0]);
+
+        for (int start = 0; start < ids_to_fetch.length; start += MAX_FEATURES_PER_REQUEST) {
+            String[] chunk = Arrays.copyOfRange(ids_to_fetch, start,
+                    Math.min(start + MAX_FEATURES_PER_REQUEST, ids_to_fetch.length));
+
+            for (AudioFeatures feature : fetchAudioFeaturesForSeveralTracks(spotify_api, chunk)) {
+                if (feature == null) continue;
+
+                fetched.put(feature.getId(), feature);
+
+                TrackFeatures compact = TrackFeatures.of(feature);
+                if (compact != null) AudioFeaturesCache.put(feature.getId(), compact);
+            }
+        }
+
+        for (int index = 0; index < track_ids.length; index++) {
+            if (features[index] == null) features[index] = fetched.get(track_ids[index]);
+        }
+
+        return features;
+    }
+
+    /**
+     * Looks up the features of several tracks we already know, without calling Spotify
+     *
+     * @param track_ids ids of the tracks
+     * @return features in the same order as track_ids, null for tracks whose features have not been looked up yet
+     */
+    public static TrackFeatures[] getKnownFeatures(String[] track_ids) {
+        TrackFeatures[] features = new TrackFeatures[track_ids.length];
+
+        for (int index = 0; index < track_ids.length; index++) features[index] = AudioFeaturesCache.get(track_ids[index]);
+
+        return features;
+    }
+
+    /**
+     * Fetches the audio features of several tracks from Spotify, bypassing the cache (limit of 100)
+     *
+     * @param spotify_api SpotifyApi object linked to the users account
+     * @param track_ids   ids of the tracks to query AudioFeature information on
+     * @return AudioFeatures array
+     * @throws GetAudioFeaturesForSeveralTracksException if an error occurs when accessing the spotify endpoint
+     */
+    private static AudioFeatures[] fetchAudioFeaturesForSeveralTracks(SpotifyApi spotify_api, String[] track_ids)
+            throws GetAudioFeaturesForSeveralTracksException {
+
         try {
 
             GetAudioFeaturesForSeveralTracksRequest getAudioFeaturesForSeveralTracksRequest =
                     spotify_api.getAudioFeaturesForSeveralTracks(track_ids).build();
 
-            return getAudioFeaturesForSeveralTracksRequest.execute();
+            return RequestGovernor.execute(getAudioFeaturesForSeveralTracksRequest);
 
         } catch (Exception ex) {
 
@@ -62,22 +129,31 @@ public class TrackUtilities {
     }
 
     /**
-     * Gets the audio features of several tracks (limit of 100)
+     * Gets the audio features of a track, from the AudioFeaturesCache if it has been looked up before
      *
      * @param spotify_api SpotifyApi object linked to the users account
      * @param track_id   id of the track to query AudioFeature information on
-     * @return AudioFeatures array
+     * @return AudioFeatures of the track
      * @throws GetAudioFeaturesForTrackException if an error occurs when accessing the spotify endpoint
      */
     public static AudioFeatures getAudioFeaturesForTrack(SpotifyApi spotify_api, String track_id)
             throws GetAudioFeaturesForTrackException {
 
+        TrackFeatures cached = AudioFeaturesCache.get(track_id);
+
+        if (cached != null) return cached.toAudioFeatures(track_id);
+
         try {
 
             GetAudioFeaturesForTrackRequest getAudioFeaturesForTrackRequest =
                     spotify_api.getAudioFeaturesForTrack(track_id).build();
 
-            return getAudioFeaturesForTrackRequest.execute();
+            AudioFeatures features = RequestGovernor.execute(getAudioFeaturesForTrackRequest);
+
+            TrackFeatures compact = TrackFeatures.of(features);
+            if (compact != null) AudioFeaturesCache.put(track_id, compact);
+
+            return features;
 
         } catch (Exception ex) {
 
@@ -85,6 +161,26 @@ public class TrackUtilities {
         }
     }
 
+    /**
+     * Checks if a track is playable in a market. Tracks recently seen as unplayable (see UnplayableTracks) are not,
+     * tracks fetched with a market say so themselves, otherwise the TrackFeatureStore is asked whether the track was
+     * playable the last time it was recommended for the market.
+     *
+     * @param track  track to check
+     * @param market market the track would be played in
+     * @return false if the track is (or was last seen as) not playable in the market, true if it is or if unknown
+     * (Spotify only fills in is_playable when a market is passed, so a track without it is not known to be unplayable)
+     */
+    public static boolean isPlayable(TrackSimplified track, CountryCode market) {
+        if (UnplayableTracks.contains(track.getId(), market)) return false;
+        if (track.getIsPlayable() != null) return track.getIsPlayable();
+
+        TrackFeatureStore store = TrackFeatureStore.shared();
+        Boolean stored_playable = store == null ? null : store.getPlayable(track.getId(), market);
+
+        return stored_playable == null || stored_playable;
+    }
+
     /**
      * Gets a Track based on the provided track_id
      * @param spotify_api SpotifyApi object linked to the users account
@@ -98,7 +194,7 @@ public class TrackUtilities {
 
             GetTrackRequest getTrackRequest = spotify_api.getTrack(track_id).build();
 
-            return getTrackRequest.execute();
+            return RequestGovernor.execute(getTrackRequest);
 
         } catch (Exception ex) {
             throw new GetTrackException(ex.getMessage());
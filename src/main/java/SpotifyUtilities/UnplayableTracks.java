@@ -0,0 +1,151 @@
+package SpotifyUtilities;
+
+import com.google.common.hash.Hashing;
+import com.neovisionaries.i18n.CountryCode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Negative cache of tracks Spotify has told us are not playable, per market. The generators consult it while picking
+ * candidates so a known unplayable track is never picked and then has to be replaced.
+ * <p>
+ * Each market keeps a compact open addressing set of 64-bit fingerprints of track ids (8 bytes per track, no
+ * strings). Entries expire in generations: fingerprints go into the current generation, which becomes the previous
+ * generation after half the time to live, and the previous generation is dropped. So a track is remembered for
+ * between half and all of the time to live after it was last seen as unplayable.
+ */
+public class UnplayableTracks {
+
+    /**
+     * Set of non-zero longs (0 marks a free slot) with linear probing, grows past 50% load
+     */
+    private static final class FingerprintSet {
+        private long[] table = new long[64];
+        private int size = 0;
+
+        boolean contains(long fingerprint) {
+            int mask = table.length - 1;
+
+            for (int slot = (int) fingerprint & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                if (table[slot] == fingerprint) return true;
+            }
+            return false;
+        }
+
+        void add(long fingerprint) {
+            if (size * 2 >= table.length) grow();
+
+            int mask = table.length - 1;
+            int slot = (int) fingerprint & mask;
+
+            while (table[slot] != 0) {
+                if (table[slot] == fingerprint) return;
+                slot = (slot + 1) & mask;
+            }
+
+            table[slot] = fingerprint;
+            size++;
+        }
+
+        private void grow() {
+            long[] old_table = table;
+            table = new long[old_table.length * 2];
+            size = 0;
+
+            for (long fingerprint : old_table) {
+                if (fingerprint != 0) add(fingerprint);
+            }
+        }
+    }
+
+    /**
+     * The two live generations of one market's unplayable tracks
+     */
+    private static final class MarketGenerations {
+        private FingerprintSet current = new FingerprintSet();
+        private FingerprintSet previous = new FingerprintSet();
+        private long current_started_ms = System.currentTimeMillis();
+
+        synchronized boolean contains(long fingerprint) {
+            rotate();
+            return current.contains(fingerprint) || previous.contains(fingerprint);
+        }
+
+        synchronized void add(long fingerprint) {
+            rotate();
+            current.add(fingerprint);
+        }
+
+        synchronized int size() {
+            rotate();
+            return current.size + previous.size;
+        }
+
+        private void rotate() {
+            long now = System.currentTimeMillis();
+            long generation_ms = ttl_ms / 2;
+
+            if (now - current_started_ms < generation_ms) return;
+
+            // If a whole generation passed without any activity the current generation has expired as well
+            previous = now - current_started_ms < 2 * generation_ms ? current : new FingerprintSet();
+            current = new FingerprintSet();
+            current_started_ms = now;
+        }
+    }
+
+    private static final ConcurrentHashMap<CountryCode, MarketGenerations> markets = new ConcurrentHashMap<>();
+    private static volatile long ttl_ms = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * @param ttl_s seconds a track is remembered as unplayable for after it was last seen as unplayable
+     */
+    public static void configure(long ttl_s) {
+        ttl_ms = TimeUnit.SECONDS.toMillis(ttl_s);
+    }
+
+    /**
+     * Remembers that a track is not playable in a market
+     *
+     * @param track_id id of the track
+     * @param market   market the track is not playable in
+     */
+    public static void add(String track_id, CountryCode market) {
+        if (track_id == null || market == null) return;
+
+        markets.computeIfAbsent(market, key -> new MarketGenerations()).add(fingerprint(track_id));
+    }
+
+    /**
+     * @param track_id id of the track
+     * @param market   market the track would be played in
+     * @return true if the track was recently seen as not playable in the market
+     */
+    public static boolean contains(String track_id, CountryCode market) {
+        if (track_id == null || market == null) return false;
+
+        MarketGenerations generations = markets.get(market);
+
+        return generations != null && generations.contains(fingerprint(track_id));
+    }
+
+    /**
+     * @return number of (market, track) pairs currently remembered as unplayable
+     */
+    public static long getSize() {
+        long size = 0;
+        for (MarketGenerations generations : markets.values()) size += generations.size();
+        return size;
+    }
+
+    /**
+     * @param track_id id of the track
+     * @return non-zero 64-bit fingerprint of the id
+     */
+    private static long fingerprint(String track_id) {
+        long fingerprint = Hashing.murmur3_128().hashString(track_id, StandardCharsets.US_ASCII).asLong();
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+}
@@ -1,12 +1,37 @@
 package SpotifyUtilities;
 
 import ExceptionClasses.ProfileExceptions.GetCurrentUsersProfileException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
 import se.michaelthelin.spotify.SpotifyApi;
 import se.michaelthelin.spotify.model_objects.specification.User;
 import se.michaelthelin.spotify.requests.data.users_profile.GetCurrentUsersProfileRequest;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
 public class UserProfileUtilities {
 
+    // Profiles by a hash of the access token they were fetched with, so the tokens themselves are not kept around
+    private static volatile Cache<String, User> profile_cache = buildProfileCache(300);
+
+    /**
+     * Rebuilds the profile cache with the provided time to live (any cached profiles are dropped)
+     *
+     * @param max_age_s seconds a profile is cached for after it was fetched, 0 turns the cache off
+     */
+    public static void configureProfileCache(long max_age_s) {
+        profile_cache = buildProfileCache(max_age_s);
+    }
+
+    private static Cache<String, User> buildProfileCache(long max_age_s) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(max_age_s, TimeUnit.SECONDS)
+                .build();
+    }
+
     /**
      * Fetches the current user's profile information which includes:
      * - Birthdate
@@ -15,6 +40,9 @@ public class UserProfileUtilities {
      * - Display Name
      * - Followers
      * - And a few others
+     * <p>
+     * Profiles are cached for a few minutes per access token, so the generators and handlers serving one user share
+     * a single request.
      *
      * @param spotify_api SpotifyApi object that has been built with the current user's access token
      * @return User object
@@ -24,16 +52,35 @@ public class UserProfileUtilities {
 
         User user;
 
+        String token_hash = hashToken(spotify_api.getAccessToken());
+
+        if (token_hash != null) {
+            user = profile_cache.getIfPresent(token_hash);
+            if (user != null) return user;
+        }
 
         try {
             GetCurrentUsersProfileRequest getCurrentUsersProfileRequest = spotify_api.getCurrentUsersProfile().build();
 
-            user = getCurrentUsersProfileRequest.execute();
-            return user;
+            user = RequestGovernor.execute(getCurrentUsersProfileRequest);
         }
         catch (Exception ex){
 
             throw new GetCurrentUsersProfileException(ex.getMessage());
         }
+
+        if (token_hash != null) profile_cache.put(token_hash, user);
+
+        return user;
+    }
+
+    /**
+     * @param access_token access token of a user
+     * @return SHA-256 of the token as hex, null if there is no token
+     */
+    private static String hashToken(String access_token) {
+        if (access_token == null || access_token.isEmpty()) return null;
+
+        return Hashing.sha256().hashString(access_token, StandardCharsets.UTF_8).toString();
     }
 }
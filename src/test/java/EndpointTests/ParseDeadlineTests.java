@@ -0,0 +1,31 @@
+package EndpointTests;
+
+import ExceptionClasses.InvalidInputExceptions.InvalidDeadlineException;
+import Server.GeneratePlaylistHandler;
+import Server.ServerSettings;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParseDeadlineTests {
+
+    @Test
+    public void missingDeadlineFallsBackToTheServerDefault() throws Exception {
+        assertEquals(ServerSettings.generation_deadline_ms, GeneratePlaylistHandler.parseDeadline(null));
+    }
+
+    @Test
+    public void positiveDeadlineIsUsedAsIs() throws Exception {
+        assertEquals(1, GeneratePlaylistHandler.parseDeadline("1"));
+        assertEquals(90_000, GeneratePlaylistHandler.parseDeadline("90000"));
+    }
+
+    @Test
+    public void deadlineThatIsNotAPositiveWholeNumberThrowsException() {
+        assertThrows(InvalidDeadlineException.class, () -> GeneratePlaylistHandler.parseDeadline("0"));
+        assertThrows(InvalidDeadlineException.class, () -> GeneratePlaylistHandler.parseDeadline("-5"));
+        assertThrows(InvalidDeadlineException.class, () -> GeneratePlaylistHandler.parseDeadline("1.5"));
+        assertThrows(InvalidDeadlineException.class, () -> GeneratePlaylistHandler.parseDeadline("soon"));
+        assertThrows(InvalidDeadlineException.class, () -> GeneratePlaylistHandler.parseDeadline(""));
+    }
+}
@@ -0,0 +1,66 @@
+package PlaylistGeneratingTests;
+
+import PlaylistGenerating.PlaylistTypes.ConcurrencyUtilities;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrencyUtilitiesTests {
+
+    @AfterEach
+    public void restoreDefaults() {
+        ConcurrencyUtilities.useBoundedPool(32);
+    }
+
+    /**
+     * Like a Classic phase, submits one child per interval and waits for all of them
+     */
+    private static Integer sumOfChildren(int num_children) throws Exception {
+        List<Future<Integer>> children = new ArrayList<>();
+
+        for (int child = 1; child <= num_children; child++) {
+            int value = child;
+            children.add(ConcurrencyUtilities.submit(() -> value));
+        }
+
+        return ConcurrencyUtilities.awaitAll(children, Exception.class).stream().mapToInt(Integer::intValue).sum();
+    }
+
+    @Test
+    public void nestedFanOutFinishesWhenTheParentsHoldEveryThread() {
+        ConcurrencyUtilities.useBoundedPool(1);
+
+        List<Integer> sums = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            List<Future<Integer>> phases = List.of(
+                    ConcurrencyUtilities.submit(() -> sumOfChildren(3)),
+                    ConcurrencyUtilities.submit(() -> sumOfChildren(4)),
+                    ConcurrencyUtilities.submit(() -> sumOfChildren(5)));
+
+            return ConcurrencyUtilities.awaitAll(phases, Exception.class);
+        });
+
+        assertEquals(List.of(6, 10, 15), sums);
+    }
+
+    @Test
+    public void rethrowsTheTasksCheckedException() {
+        Future<Integer> failing = ConcurrencyUtilities.submit(() -> {
+            throw new java.io.IOException("spotify is down");
+        });
+
+        java.io.IOException thrown = assertThrows(java.io.IOException.class,
+                () -> ConcurrencyUtilities.awaitAll(List.of(failing), java.io.IOException.class));
+        assertEquals("spotify is down", thrown.getMessage());
+    }
+
+    @Test
+    public void rejectsAPoolWithoutThreads() {
+        assertThrows(IllegalArgumentException.class, () -> ConcurrencyUtilities.useBoundedPool(0));
+    }
+}
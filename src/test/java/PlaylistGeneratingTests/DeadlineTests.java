@@ -0,0 +1,116 @@
+package PlaylistGeneratingTests;
+
+import PlaylistGenerating.PlaylistTypes.Deadline;
+import PlaylistGenerating.PlaylistTypes.Relax.GenerateRelax;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.junit.jupiter.api.Test;
+import se.michaelthelin.spotify.IHttpManager;
+import se.michaelthelin.spotify.SpotifyApi;
+
+import java.net.URI;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeadlineTests {
+
+    /**
+     * Spotify as seen by a generator whose every recommendation query returns the same single short track, so no
+     * interval can ever fit
+     */
+    private static class StarvedSpotify implements IHttpManager {
+
+        @Override
+        public String get(URI uri, Header[] headers) {
+            String path = uri.getPath();
+
+            if (path.equals("/v1/me")) {
+                return "{\"id\": \"runner\", \"display_name\": \"Runner\", \"country\": \"US\", \"type\": \"user\"}";
+            }
+            if (path.equals("/v1/recommendations")) {
+                return "{\"seeds\": [], \"tracks\": [{\"id\": \"short\", \"uri\": \"spotify:track:short\","
+                        + " \"name\": \"Short\", \"duration_ms\": 60000, \"type\": \"track\"}]}";
+            }
+            if (path.equals("/v1/audio-features")) return "{\"audio_features\": [null]}";
+
+            throw new IllegalStateException("Unexpected request " + uri);
+        }
+
+        @Override
+        public String post(URI uri, Header[] headers, HttpEntity body) {
+            String path = uri.getPath();
+
+            if (path.equals("/v1/users/runner/playlists")) return "{\"id\": \"playlist\", \"name\": \"Relax\"}";
+            if (path.equals("/v1/playlists/playlist/tracks")) return "{\"snapshot_id\": \"snapshot\"}";
+
+            throw new IllegalStateException("Unexpected request " + uri);
+        }
+
+        @Override
+        public String put(URI uri, Header[] headers, HttpEntity body) {
+            throw new IllegalStateException("Unexpected request " + uri);
+        }
+
+        @Override
+        public String delete(URI uri, Header[] headers, HttpEntity body) {
+            throw new IllegalStateException("Unexpected request " + uri);
+        }
+    }
+
+    /**
+     * Relax generator that only asks whether its margin could be relaxed any further, like the interval loops do
+     * before their last try
+     */
+    private static class ProbingGenerator extends GenerateRelax {
+
+        ProbingGenerator(SpotifyApi spotify_api) throws Exception {
+            super(spotify_api, "rock", 30, 20, "low", false);
+        }
+
+        boolean probe(float margin_of_error) {
+            return canRelax(margin_of_error);
+        }
+    }
+
+    private static SpotifyApi starvedSpotifyApi() {
+        return new SpotifyApi.Builder()
+                .setAccessToken("starved-generator-token")
+                .setHttpManager(new StarvedSpotify())
+                .build();
+    }
+
+    @Test
+    public void expiresOnlyOnceItsTimeHasPassed() {
+        assertTrue(Deadline.in(0).isExpired());
+        assertTrue(Deadline.in(-1).isExpired());
+        assertFalse(Deadline.in(60_000).isExpired());
+    }
+
+    @Test
+    public void neverExpiresEvenForTheLongestTimeouts() {
+        assertFalse(Deadline.never().isExpired());
+        assertFalse(Deadline.in(Long.MAX_VALUE).isExpired()); // must not overflow into the past
+        assertEquals(Long.MAX_VALUE, Deadline.in(Long.MAX_VALUE).expires_at_ms());
+    }
+
+    @Test
+    public void starvedGeneratorSettlesForBestEffortOnceTheDeadlineHasPassed() throws Exception {
+        GenerateRelax generator = new GenerateRelax(starvedSpotifyApi(), "rock", 30, 20, "low", false);
+        generator.setDeadline(Deadline.in(0));
+
+        String playlist_id = assertTimeoutPreemptively(Duration.ofSeconds(30), generator::generatePlaylist);
+
+        assertEquals("playlist", playlist_id);
+        assertTrue(generator.isBestEffort());
+    }
+
+    @Test
+    public void askingWhetherTheMarginCanRelaxDoesNotMarkBestEffort() throws Exception {
+        ProbingGenerator generator = new ProbingGenerator(starvedSpotifyApi());
+
+        assertTrue(generator.probe(.05f));
+        assertFalse(generator.probe(1f)); // the last try, which may still fit
+        assertFalse(generator.isBestEffort());
+    }
+}
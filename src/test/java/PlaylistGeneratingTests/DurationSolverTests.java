@@ -0,0 +1,73 @@
+package PlaylistGeneratingTests;
+
+import PlaylistGenerating.PlaylistTypes.DurationSolver;
+import PlaylistGenerating.PlaylistTypes.DurationWindow;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DurationSolverTests {
+
+    @Test
+    public void picksOneTrackPerIntervalWithinTheWindow() {
+        int[][] durations_ms = {
+                {150_000, 180_000, 240_000},
+                {170_000, 200_000, 260_000},
+                {160_500, 210_000, 300_000}
+        };
+        DurationWindow window = DurationWindow.of(600_500, .001f);
+
+        int[] picks = DurationSolver.pickOnePerGroup(durations_ms, window);
+
+        assertNotNull(picks);
+        int total_ms = 0;
+        for (int interval = 0; interval < durations_ms.length; interval++) {
+            total_ms += durations_ms[interval][picks[interval]];
+        }
+        assertTrue(total_ms >= window.min_ms() && total_ms <= window.max_ms());
+    }
+
+    @Test
+    public void returnsNullWhenNoCombinationFits() {
+        int[][] durations_ms = {{150_000, 160_000}, {150_000, 160_000}};
+
+        assertNull(DurationSolver.pickOnePerGroup(durations_ms, DurationWindow.of(400_000, .02f)));
+    }
+
+    @Test
+    public void checksExactDurationsNotJustBuckets() {
+        // Both round to 100 seconds, but only the first is short enough for a window ending at 100.2 seconds
+        int[][] durations_ms = {{50_400}, {50_400}};
+
+        assertNull(DurationSolver.pickOnePerGroup(durations_ms, new DurationWindow(100_000, 99_000, 100_200)));
+        assertNotNull(DurationSolver.pickOnePerGroup(durations_ms, new DurationWindow(100_000, 99_000, 100_800)));
+    }
+
+    @Test
+    public void picksANonContiguousSubsetWithinTheWindow() {
+        // No three neighbours in duration order fit 10 minutes, but 150 + 200 + 250 seconds does
+        int[] durations_ms = {150_000, 160_000, 200_000, 295_000, 250_000, 300_000};
+        DurationWindow window = DurationWindow.of(600_000, .001f);
+
+        int[] picks = DurationSolver.pickSubset(durations_ms, 3, window);
+
+        assertArrayEquals(new int[]{0, 2, 4}, picks);
+        assertNull(DurationSolver.pickSubset(durations_ms, 2, window));
+        assertArrayEquals(new int[]{3, 5}, DurationSolver.pickClosestSubset(durations_ms, 2, 600_000));
+    }
+
+    @Test
+    public void packsEveryBinWhenShortTracksArePairedWithLongOnes() {
+        // Two 7 minute intervals fit (150 + 270 and 180 + 240), the 10 minute track fits none
+        int[] durations_ms = {150_000, 180_000, 240_000, 270_000, 600_000};
+        DurationWindow window = DurationWindow.of(420_000, .01f);
+
+        int[][] bins = DurationSolver.packBins(durations_ms, 3, 2, window);
+
+        assertEquals(2, bins.length);
+        for (int[] bin : bins) {
+            int total_ms = durations_ms[bin[0]] + durations_ms[bin[1]];
+            assertTrue(total_ms >= window.min_ms() && total_ms <= window.max_ms());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package PlaylistGeneratingTests;
+
+import PlaylistGenerating.PlaylistTypes.DurationWindow;
+import PlaylistGenerating.PlaylistTypes.TrackPool;
+import org.junit.jupiter.api.Test;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrackPoolTests {
+
+    private static TrackSimplified track(String id, int duration_ms) {
+        return new TrackSimplified.Builder().setId(id).setDurationMs(duration_ms).build();
+    }
+
+    @Test
+    public void sumsRunsInDurationOrder() {
+        TrackPool pool = TrackPool.of(new TrackSimplified[]{
+                track("c", 300_000), track("a", 150_000), track("b", 200_000)});
+
+        assertEquals(350_000, pool.getWindowDurationMs(0, 2));
+        assertEquals(500_000, pool.getWindowDurationMs(1, 2));
+        assertArrayEquals(new int[]{1, 2, 0}, pool.getByDuration());
+        assertArrayEquals(new int[]{300_000, 150_000, 200_000}, pool.getDurations());
+        assertEquals("a", pool.getTrack(1).getId());
+        assertTrue(Float.isNaN(pool.getTempo(0)));
+    }
+
+    @Test
+    public void rulesOutWindowsNoTracksCanFit() {
+        TrackPool pool = TrackPool.of(List.of(track("a", 150_000), track("b", 200_000), track("c", 300_000)));
+
+        assertTrue(pool.canFit(2, DurationWindow.of(400_000, .01f)));
+        assertFalse(pool.canFit(2, DurationWindow.of(300_000, .01f))); // the two shortest are already too long
+        assertFalse(pool.canFit(2, DurationWindow.of(600_000, .01f))); // the two longest are still too short
+        assertFalse(pool.canFit(4, DurationWindow.of(650_000, .5f))); // not enough tracks
+    }
+
+    @Test
+    public void findsTheShortestRunThatFits() {
+        TrackPool pool = TrackPool.of(new TrackSimplified[]{
+                track("a", 150_000), track("b", 200_000), track("c", 300_000), track("d", 320_000)});
+
+        int[] run = pool.findDurationRun(2, DurationWindow.of(500_000, .01f));
+
+        assertArrayEquals(new int[]{1, 2}, run);
+        assertEquals("b", pool.getTracks(run)[0].getId());
+        assertNull(pool.findDurationRun(2, DurationWindow.of(400_000, .01f)));
+    }
+
+    @Test
+    public void ordersByDescendingTempoWithUnknownTempoLast() {
+        TrackSimplified[] tracks = {track("a", 200_000), track("b", 200_000), track("c", 200_000), track("d", 200_000)};
+        float[] tempo = {90, Float.NaN, 120.5f, 60};
+
+        TrackPool pool = TrackPool.of(tracks, tempo, new float[tracks.length]);
+
+        assertArrayEquals(new int[]{2, 0, 3, 1}, pool.getByTempoDescending());
+    }
+}
@@ -0,0 +1,67 @@
+package PlaylistGeneratingTests;
+
+import PlaylistGenerating.PlaylistTypes.Deadline;
+import PlaylistGenerating.PlaylistTypes.SearchBudget;
+import PlaylistGenerating.PlaylistTypes.WideningSearch;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WideningSearchTests {
+
+    @Test
+    public void findsTheTightestGoodOffsetInLogarithmicAttempts() throws Exception {
+        List<Integer> offsets = new ArrayList<>();
+
+        int found = WideningSearch.search(offset -> {
+            offsets.add(offset);
+            return offset;
+        }, offset -> offset >= 37, 0, Deadline.never(), SearchBudget.of(16));
+
+        assertEquals(37, found);
+        assertTrue(offsets.size() <= 13, "took " + offsets.size() + " attempts");
+    }
+
+    @Test
+    public void returnsTheWidestResultOnceTheBudgetRunsOut() throws Exception {
+        int found = WideningSearch.search(offset -> offset, offset -> false, 100, Deadline.never(),
+                SearchBudget.of(3));
+
+        assertEquals(104, found); // 100, then 101, 102, 104 from the budget
+    }
+
+    @Test
+    public void stopsWideningOnceTheDeadlineHasPassed() throws Exception {
+        List<Integer> offsets = new ArrayList<>();
+
+        int found = WideningSearch.search(offset -> {
+            offsets.add(offset);
+            return offset;
+        }, offset -> false, 0, Deadline.in(0), SearchBudget.of(16));
+
+        assertEquals(0, found);
+        assertEquals(List.of(0), offsets);
+    }
+
+    @Test
+    public void searchesOfOneGenerationShareTheirBudget() throws Exception {
+        SearchBudget budget = SearchBudget.of(5);
+        List<Integer> offsets = new ArrayList<>();
+
+        WideningSearch.Query<Integer> query = offset -> {
+            offsets.add(offset);
+            return offset;
+        };
+
+        assertEquals(16, WideningSearch.search(query, offset -> false, 0, Deadline.never(), budget));
+        assertEquals(0, budget.getRemaining());
+
+        // The budget is spent, so every later search only makes its first query
+        assertEquals(50, WideningSearch.search(query, offset -> false, 50, Deadline.never(), budget));
+        assertEquals(50, WideningSearch.search(query, offset -> false, 50, Deadline.never(), budget));
+        assertEquals(List.of(0, 1, 2, 4, 8, 16, 50, 50), offsets);
+    }
+}
@@ -0,0 +1,101 @@
+package UtilitiesTests;
+
+import SpotifyUtilities.PooledHttpManager;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.core5.http.Header;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.michaelthelin.spotify.exceptions.detailed.NotFoundException;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PooledHttpManagerTests {
+
+    private HttpServer server;
+    private URI base_uri;
+    private final CountDownLatch arrived = new CountDownLatch(8);
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+
+        // Only answers once 8 requests are being handled at the same time, so it needs 8 open connections
+        server.createContext("/together", exchange -> {
+            arrived.countDown();
+            boolean is_together = false;
+            try {
+                is_together = arrived.await(3, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            reply(exchange, 200, "{\"together\": " + is_together + "}");
+        });
+        server.createContext("/slow-down", exchange -> {
+            exchange.getResponseHeaders().add("Retry-After", "7");
+            reply(exchange, 429, "{\"error\": {\"status\": 429, \"message\": \"API rate limit exceeded\"}}");
+        });
+        server.createContext("/missing", exchange -> reply(exchange, 404, "{\"error\": {\"message\": \"nope\"}}"));
+        server.start();
+
+        base_uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private static void reply(com.sun.net.httpserver.HttpExchange exchange, int status, String body)
+            throws java.io.IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    @Test
+    public void opensMoreThanTheDefaultFiveConnectionsToOneHost() throws Exception {
+        PooledHttpManager http_manager = new PooledHttpManager(16, 8);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        List<Future<String>> responses = new ArrayList<>();
+
+        for (int request = 0; request < 8; request++) {
+            responses.add(callers.submit(() -> http_manager.get(base_uri.resolve("/together"), new Header[0])));
+        }
+
+        // With HttpClient's default of 5 connections per host the first 5 would give up waiting for the others
+        for (Future<String> response : responses) {
+            assertEquals("{\"together\": true}", response.get(10, TimeUnit.SECONDS));
+        }
+        callers.shutdown();
+    }
+
+    @Test
+    public void throwsTheSameExceptionsAsSpotifyHttpManager() {
+        PooledHttpManager http_manager = new PooledHttpManager(4, 4);
+
+        TooManyRequestsException rate_limited = assertThrows(TooManyRequestsException.class,
+                () -> http_manager.get(base_uri.resolve("/slow-down"), new Header[0]));
+        assertEquals(7, rate_limited.getRetryAfter());
+        assertEquals("API rate limit exceeded", rate_limited.getMessage());
+
+        assertThrows(NotFoundException.class, () -> http_manager.get(base_uri.resolve("/missing"), new Header[0]));
+    }
+
+    @Test
+    public void rejectsPoolsWithoutConnections() {
+        assertThrows(IllegalArgumentException.class, () -> new PooledHttpManager(0, 4));
+        assertThrows(IllegalArgumentException.class, () -> new PooledHttpManager(4, 0));
+    }
+}
@@ -0,0 +1,117 @@
+package UtilitiesTests;
+
+import SpotifyUtilities.RecommendationArguments;
+import SpotifyUtilities.RecommendationIndex;
+import com.neovisionaries.i18n.CountryCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.michaelthelin.spotify.model_objects.specification.Recommendations;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecommendationIndexTests {
+
+    private static RecommendationArguments query(int limit, float min_tempo, float max_tempo, float min_energy,
+                                                 float max_energy) {
+        return new RecommendationArguments(null, limit, "pop", null, null, min_tempo, max_tempo,
+                (min_tempo + max_tempo) / 2, min_energy, max_energy, (min_energy + max_energy) / 2, CountryCode.US);
+    }
+
+    private static Recommendations recommend(String... ids) {
+        TrackSimplified[] tracks = new TrackSimplified[ids.length];
+
+        for (int index = 0; index < ids.length; index++) {
+            tracks[index] = new TrackSimplified.Builder().setId(ids[index]).setIsPlayable(true)
+                    .setDurationMs(200_000).build();
+        }
+
+        return new Recommendations.Builder().setTracks(tracks).build();
+    }
+
+    private static String[] ids(TrackSimplified[] tracks) {
+        return Arrays.stream(tracks).map(TrackSimplified::getId).sorted().toArray(String[]::new);
+    }
+
+    @BeforeEach
+    public void emptyIndex() {
+        RecommendationIndex.configure(500, 2_000, 60);
+    }
+
+    @Test
+    public void answersTheSameQueryLocally() {
+        RecommendationArguments args = query(3, 120, 130, .4f, .6f);
+        RecommendationIndex.refine(args, recommend("a", "b", "c"));
+
+        TrackSimplified[] found = RecommendationIndex.findTracks(args);
+        Recommendations answer = RecommendationIndex.answer(found, args, () -> fail("went to Spotify"));
+
+        assertArrayEquals(new String[]{"a", "b", "c"}, ids(answer.getTracks()));
+    }
+
+    @Test
+    public void mergesOverlappingRangesWithoutDuplicates() {
+        RecommendationIndex.refine(query(3, 100, 120, .4f, .6f), recommend("a", "b", "c"));
+        RecommendationIndex.refine(query(3, 110, 130, .4f, .6f), recommend("c", "d", "e"));
+
+        // Both queries' tracks fit the range covering both, and c is only indexed once
+        TrackSimplified[] found = RecommendationIndex.findTracks(query(10, 100, 130, .4f, .6f));
+        assertArrayEquals(new String[]{"a", "b", "c", "d", "e"}, ids(found));
+
+        // c keeps the range it was first recommended for, which the second query's range does not cover
+        assertArrayEquals(new String[]{"d", "e"}, ids(RecommendationIndex.findTracks(query(10, 110, 130, .4f, .6f))));
+    }
+
+    @Test
+    public void topsUpAMissFromSpotify() {
+        RecommendationIndex.refine(query(2, 120, 130, .4f, .6f), recommend("a", "b"));
+
+        RecommendationArguments args = query(4, 120, 130, .4f, .6f);
+        AtomicInteger fetches = new AtomicInteger();
+
+        Recommendations answer = RecommendationIndex.answer(RecommendationIndex.findTracks(args), args, () -> {
+            fetches.incrementAndGet();
+            return recommend("b", "c", "d", "e");
+        });
+
+        assertEquals(1, fetches.get());
+        assertEquals(4, answer.getTracks().length);
+        assertArrayEquals(new String[]{"a", "b"}, ids(Arrays.copyOf(answer.getTracks(), 2))); // indexed tracks first
+        assertArrayEquals(new String[]{"a", "b", "c", "d"}, ids(answer.getTracks()));
+    }
+
+    @Test
+    public void onlyAnswersWithTracksWhoseWholeRangeFits() {
+        RecommendationIndex.refine(query(2, 110, 130, .4f, .6f), recommend("a", "b"));
+
+        // The tracks could be anywhere from 110 to 130 bpm and .4 to .6 energy
+        assertEquals(0, RecommendationIndex.findTracks(query(10, 115, 125, .4f, .6f)).length);
+        assertEquals(0, RecommendationIndex.findTracks(query(10, 110, 130, .5f, .6f)).length);
+        assertEquals(0, RecommendationIndex.findTracks(query(10, 110, 129, .4f, .6f)).length);
+        assertEquals(2, RecommendationIndex.findTracks(query(10, 105, 135, .3f, .7f)).length);
+
+        // Another seed or market is a different group
+        RecommendationArguments other_market = new RecommendationArguments(null, 10, "pop", null, null, 105, 135,
+                120, .3f, .7f, .5f, CountryCode.DE);
+        assertEquals(0, RecommendationIndex.findTracks(other_market).length);
+    }
+
+    @Test
+    public void fullGroupDropsTheLeastRecentlyRecommendedTracks() {
+        RecommendationIndex.configure(500, 3, 60);
+
+        RecommendationIndex.refine(query(1, 150, 160, .4f, .6f), recommend("a"));
+        RecommendationIndex.refine(query(1, 150, 160, .4f, .6f), recommend("b"));
+        RecommendationIndex.refine(query(1, 150, 160, .4f, .6f), recommend("c"));
+        RecommendationIndex.refine(query(1, 150, 160, .4f, .6f), recommend("a")); // a is recent again
+
+        // The group is full, so the new slow track takes the place of b, the track recommended least recently
+        RecommendationIndex.refine(query(1, 60, 70, .4f, .6f), recommend("d"));
+
+        assertArrayEquals(new String[]{"d"}, ids(RecommendationIndex.findTracks(query(10, 60, 70, .4f, .6f))));
+        assertArrayEquals(new String[]{"a", "c"}, ids(RecommendationIndex.findTracks(query(10, 150, 160, .4f, .6f))));
+    }
+}
@@ -0,0 +1,78 @@
+package UtilitiesTests;
+
+import SpotifyUtilities.RequestGovernor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+import se.michaelthelin.spotify.requests.IRequest;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestGovernorTests {
+
+    /**
+     * A request whose execute() throws a 429 the first failures times, then returns "ok"
+     */
+    @SuppressWarnings("unchecked")
+    private static IRequest<String> fakeRequest(AtomicInteger calls, int failures) {
+        return (IRequest<String>) Proxy.newProxyInstance(IRequest.class.getClassLoader(),
+                new Class<?>[]{IRequest.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("execute")) throw new UnsupportedOperationException();
+                    if (calls.incrementAndGet() <= failures) throw new TooManyRequestsException("slow down", 1);
+                    return "ok";
+                });
+    }
+
+    @AfterEach
+    public void restoreDefaults() {
+        RequestGovernor.configure(10, 20, 3);
+    }
+
+    @Test
+    public void rejectsSettingsThatWouldBlockForever() {
+        assertThrows(IllegalArgumentException.class, () -> RequestGovernor.configure(0, 20, 3));
+        assertThrows(IllegalArgumentException.class, () -> RequestGovernor.configure(Double.NaN, 20, 3));
+        assertThrows(IllegalArgumentException.class, () -> RequestGovernor.configure(10, 0, 3));
+        assertThrows(IllegalArgumentException.class, () -> RequestGovernor.configure(10, 20, -1));
+    }
+
+    @Test
+    public void spacesRequestsOnceTheBurstIsUsed() throws Exception {
+        RequestGovernor.configure(50, 1, 0);
+        AtomicInteger calls = new AtomicInteger();
+
+        RequestGovernor.execute(fakeRequest(calls, 0)); // may still find the bucket full
+
+        long started_ns = System.nanoTime();
+        for (int request = 0; request < 3; request++) RequestGovernor.execute(fakeRequest(calls, 0));
+        long elapsed_ms = (System.nanoTime() - started_ns) / 1_000_000;
+
+        // Three more tokens at 50 per second take at least 60ms to refill
+        assertTrue(elapsed_ms >= 50, "took " + elapsed_ms + "ms");
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void retriesARateLimitedRequestAfterRetryAfter() throws Exception {
+        RequestGovernor.configure(100, 20, 1);
+        AtomicInteger calls = new AtomicInteger();
+
+        long started_ms = System.currentTimeMillis();
+        assertEquals("ok", RequestGovernor.execute(fakeRequest(calls, 1)));
+
+        assertEquals(2, calls.get());
+        assertTrue(System.currentTimeMillis() - started_ms >= 900, "did not wait for Retry-After");
+    }
+
+    @Test
+    public void throwsOnceTheRetriesAreUsedUp() {
+        RequestGovernor.configure(100, 20, 0);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(TooManyRequestsException.class, () -> RequestGovernor.execute(fakeRequest(calls, 5)));
+        assertEquals(1, calls.get());
+    }
+}
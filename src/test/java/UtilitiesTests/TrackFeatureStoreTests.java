@@ -0,0 +1,86 @@
+package UtilitiesTests;
+
+import SpotifyUtilities.TrackFeatureStore;
+import SpotifyUtilities.TrackFeatures;
+import com.neovisionaries.i18n.CountryCode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrackFeatureStoreTests {
+
+    @TempDir
+    Path temp_dir;
+
+    @Test
+    public void featuresSurviveReopening() throws IOException {
+        Path path = temp_dir.resolve("store.bin");
+
+        TrackFeatureStore store = TrackFeatureStore.open(path, 16);
+        store.putFeatures("01iyCAUm8EvOFqVWYJ3dVX", new TrackFeatures(128.5f, .75f, 201_000));
+        store.close();
+
+        TrackFeatureStore reopened = TrackFeatureStore.open(path, 16);
+        assertEquals(new TrackFeatures(128.5f, .75f, 201_000), reopened.getFeatures("01iyCAUm8EvOFqVWYJ3dVX"));
+        assertNull(reopened.getFeatures("3WcC6NH9J77xPEvj1SOL7z"));
+        assertEquals(1, reopened.getCount());
+        reopened.close();
+    }
+
+    @Test
+    public void storeGrowsPastItsInitialCapacity() throws IOException {
+        TrackFeatureStore store = TrackFeatureStore.open(temp_dir.resolve("store.bin"), 16);
+
+        for (int index = 0; index < 1_000; index++) {
+            store.putFeatures("track" + index, new TrackFeatures(index, index / 1_000f, index * 1_000));
+        }
+
+        assertEquals(1_000, store.getCount());
+        assertTrue(store.getCapacity() >= 1_024);
+
+        for (int index = 0; index < 1_000; index++) {
+            assertEquals(new TrackFeatures(index, index / 1_000f, index * 1_000), store.getFeatures("track" + index));
+        }
+        store.close();
+    }
+
+    @Test
+    public void playabilityIsStoredPerMarket() throws IOException {
+        TrackFeatureStore store = TrackFeatureStore.open(temp_dir.resolve("store.bin"), 16);
+
+        store.putPlayable("01iyCAUm8EvOFqVWYJ3dVX", CountryCode.US, true);
+        store.putPlayable("01iyCAUm8EvOFqVWYJ3dVX", CountryCode.DE, false);
+
+        assertEquals(Boolean.TRUE, store.getPlayable("01iyCAUm8EvOFqVWYJ3dVX", CountryCode.US));
+        assertEquals(Boolean.FALSE, store.getPlayable("01iyCAUm8EvOFqVWYJ3dVX", CountryCode.DE));
+        assertNull(store.getPlayable("01iyCAUm8EvOFqVWYJ3dVX", CountryCode.FR));
+        assertNull(store.getFeatures("01iyCAUm8EvOFqVWYJ3dVX"));
+        store.close();
+    }
+
+    @Test
+    public void storeWrittenByAnOlderVersionStartsEmpty() throws IOException {
+        Path path = temp_dir.resolve("store.bin");
+
+        TrackFeatureStore store = TrackFeatureStore.open(path, 16);
+        store.putPlayable("01iyCAUm8EvOFqVWYJ3dVX", CountryCode.US, true);
+        store.close();
+
+        // Version 1 stored markets by enum ordinal, which a library upgrade can silently change
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 1), 4);
+        }
+
+        TrackFeatureStore reopened = TrackFeatureStore.open(path, 16);
+        assertEquals(0, reopened.getCount());
+        assertNull(reopened.getPlayable("01iyCAUm8EvOFqVWYJ3dVX", CountryCode.US));
+        reopened.close();
+    }
+}